@@ -0,0 +1,37 @@
+package komposten.automata.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import komposten.automata.backend.rendering.AbstractMesh;
+import komposten.automata.backend.rendering.GridMesh;
+import komposten.automata.backend.rendering.VertexFormat;
+
+/**
+ * Measures recolouring and uploading the cells of a {@link GridMesh}.
+ */
+public class GridMeshBenchmark extends RenderingBenchmark
+{
+	@Param({ "Default", "Compact" })
+	public VertexFormat vertexFormat;
+
+	private GridMesh mesh;
+
+
+	@Override
+	protected AbstractMesh createGrid(int width, int height)
+	{
+		mesh = new GridMesh(width, height, cellSize, vertexFormat);
+		mesh.refreshMesh();
+		return mesh;
+	}
+
+
+	@Benchmark
+	public GridMesh gridMeshRefresh()
+	{
+		recolour();
+		mesh.refreshMesh();
+		return mesh;
+	}
+}
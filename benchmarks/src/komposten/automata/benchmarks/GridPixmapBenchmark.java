@@ -0,0 +1,36 @@
+package komposten.automata.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import komposten.automata.backend.rendering.AbstractMesh;
+import komposten.automata.backend.rendering.GridPixmap;
+
+/**
+ * Measures recolouring and uploading the cells of a {@link GridPixmap}.
+ */
+public class GridPixmapBenchmark extends RenderingBenchmark
+{
+	@Param({ "Screen", "Cell" })
+	public GridPixmap.Resolution pixmapResolution;
+
+	private GridPixmap pixmap;
+
+
+	@Override
+	protected AbstractMesh createGrid(int width, int height)
+	{
+		pixmap = new GridPixmap(width, height, cellSize, pixmapResolution);
+		pixmap.refreshTexture();
+		return pixmap;
+	}
+
+
+	@Benchmark
+	public GridPixmap gridPixmapRefresh()
+	{
+		recolour();
+		pixmap.refreshTexture();
+		return pixmap;
+	}
+}
@@ -0,0 +1,60 @@
+package komposten.automata.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+
+/**
+ * Sets up just enough of libGDX to create meshes, pixmaps and textures without a
+ * window. The natives are loaded so that buffers and pixmaps work as normal, while
+ * all GL calls are ignored. The benchmarks therefore measure the CPU side of the
+ * rendering code, not the driver.
+ */
+public class HeadlessGL
+{
+	private static boolean initialised;
+
+
+	public static synchronized void initialise()
+	{
+		if (initialised)
+			return;
+
+		GdxNativesLoader.load();
+
+		InvocationHandler handler = new InvocationHandler()
+		{
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args)
+			{
+				return getDefaultValue(method.getReturnType());
+			}
+		};
+
+		GL20 gl = (GL20) Proxy.newProxyInstance(GL20.class.getClassLoader(), new Class<?>[] { GL20.class }, handler);
+		Gdx.gl = gl;
+		Gdx.gl20 = gl;
+		Gdx.gl30 = null;
+
+		initialised = true;
+	}
+
+
+	private static Object getDefaultValue(Class<?> type)
+	{
+		if (type == int.class)
+			return 0;
+		else if (type == boolean.class)
+			return false;
+		else if (type == float.class)
+			return 0f;
+		else if (type == String.class)
+			return "";
+		else
+			return null;
+	}
+}
@@ -0,0 +1,42 @@
+package komposten.automata.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import komposten.automata.backend.rendering.AbstractMesh;
+import komposten.automata.backend.rendering.IndexGridMesh;
+import komposten.automata.backend.rendering.VertexFormat;
+
+/**
+ * Measures recolouring and uploading the cells of an {@link IndexGridMesh}, with
+ * both 32-bit indices and the batched 16-bit indices (which are otherwise only
+ * used without OpenGL 3).
+ */
+public class IndexGridMeshBenchmark extends RenderingBenchmark
+{
+	@Param({ "Default", "Compact" })
+	public VertexFormat vertexFormat;
+
+	@Param({ "false", "true" })
+	public boolean shortIndices;
+
+	private IndexGridMesh mesh;
+
+
+	@Override
+	protected AbstractMesh createGrid(int width, int height)
+	{
+		mesh = new IndexGridMesh(width, height, cellSize, vertexFormat, shortIndices);
+		mesh.refreshMesh();
+		return mesh;
+	}
+
+
+	@Benchmark
+	public IndexGridMesh indexGridMeshRefresh()
+	{
+		recolour();
+		mesh.refreshMesh();
+		return mesh;
+	}
+}
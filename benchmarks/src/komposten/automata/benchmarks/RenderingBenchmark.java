@@ -0,0 +1,89 @@
+package komposten.automata.benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.badlogic.gdx.graphics.Color;
+
+import komposten.automata.backend.rendering.AbstractMesh;
+
+/**
+ * Measures how long it takes to recolour a fraction of the cells in a grid and
+ * upload them. GL calls are ignored (see {@link HeadlessGL}). Each renderer has its
+ * own subclass, so that it is only run with the parameters it uses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public abstract class RenderingBenchmark
+{
+	/** The window size in pixels, as <code>[width]x[height]</code>. */
+	@Param({ "1024x768", "1920x1080" })
+	public String windowSize;
+
+	@Param({ "1", "5" })
+	public int cellSize;
+
+	/** The fraction of the cells that are recoloured each invocation. */
+	@Param({ "0.01", "0.1", "1" })
+	public float changedFraction;
+
+	private AbstractMesh grid;
+	private int[] changedCells;
+	private Color[] colors;
+
+
+	@Setup
+	public void setup()
+	{
+		HeadlessGL.initialise();
+
+		String[] size = windowSize.split("x");
+		int width = Integer.parseInt(size[0]);
+		int height = Integer.parseInt(size[1]);
+
+		grid = createGrid(width, height);
+
+		Random random = new Random(0);
+		int cellCount = grid.getCellCount();
+		changedCells = new int[(int) (cellCount * changedFraction)];
+		for (int i = 0; i < changedCells.length; i++)
+			changedCells[i] = random.nextInt(cellCount);
+		Arrays.sort(changedCells);
+
+		colors = new Color[] { Color.RED, Color.GREEN, Color.BLACK };
+	}
+
+
+	/**
+	 * @return A grid of the specified size, with all cells uploaded.
+	 */
+	protected abstract AbstractMesh createGrid(int width, int height);
+
+
+	/**
+	 * Sets the colours of the changed cells, without uploading them.
+	 */
+	protected void recolour()
+	{
+		for (int i = 0; i < changedCells.length; i++)
+			grid.setColor(colors[i % colors.length], changedCells[i]);
+	}
+
+
+	@TearDown
+	public void tearDown()
+	{
+		grid.dispose();
+	}
+}
@@ -0,0 +1,87 @@
+package komposten.automata.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import komposten.automata.backend.TiledSimulation;
+import komposten.automata.life.GameOfLife;
+import komposten.automata.life.LifeSimulation;
+import komposten.automata.predatorprey.PixPredatorPrey;
+import komposten.automata.predatorprey.PredatorPrey;
+import komposten.automata.predatorprey.PredatorPreySimulation;
+import komposten.automata.simpleevolution.EvolutionSimulation;
+import komposten.automata.simpleevolution.SimpleEvolution;
+
+/**
+ * Measures one tick of each automaton. The automata's <code>update()</code> only
+ * updates their simulation, so the simulations are benchmarked directly with the
+ * grid size each automaton would use in a window of the specified size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SimulationBenchmark
+{
+	@Param({ "PredatorPrey", "PixPredatorPrey", "SimpleEvolution", "GameOfLife" })
+	public String automaton;
+
+	/** The window size in pixels, as <code>[width]x[height]</code>. */
+	@Param({ "1024x768", "1920x1080", "3840x2160" })
+	public String windowSize;
+
+	/** The fraction of the cells that are occupied in the starting grid. */
+	@Param({ "0.1", "0.5" })
+	public float density;
+
+	@Param({ "1", "4" })
+	public int threads;
+
+	private TiledSimulation simulation;
+
+
+	@Setup
+	public void setup()
+	{
+		String[] size = windowSize.split("x");
+		int width = Integer.parseInt(size[0]);
+		int height = Integer.parseInt(size[1]);
+
+		if (automaton.equals("PredatorPrey"))
+			simulation = new PredatorPreySimulation(width / PredatorPrey.CELL_SIZE, height / PredatorPrey.CELL_SIZE, density);
+		else if (automaton.equals("PixPredatorPrey"))
+			simulation = new PredatorPreySimulation(width / PixPredatorPrey.CELL_SIZE, height / PixPredatorPrey.CELL_SIZE, density);
+		else if (automaton.equals("SimpleEvolution"))
+			simulation = new EvolutionSimulation(width / SimpleEvolution.CELL_SIZE, height / SimpleEvolution.CELL_SIZE, density);
+		else if (automaton.equals("GameOfLife"))
+			simulation = new LifeSimulation(width / GameOfLife.CELL_SIZE, height / GameOfLife.CELL_SIZE, density);
+		else
+			throw new IllegalArgumentException("Unknown automaton: " + automaton);
+
+		simulation.setThreadCount(threads);
+	}
+
+
+	@TearDown
+	public void tearDown()
+	{
+		simulation.dispose();
+	}
+
+
+	@Benchmark
+	public long update()
+	{
+		simulation.update();
+		simulation.getChangedCells().clear();
+		return simulation.getTicks();
+	}
+}
@@ -0,0 +1,42 @@
+package komposten.automata.simpleevolution;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import komposten.automata.backend.CellRandom;
+
+/**
+ * Measures the reproduction (averaging and mutation) of a genome. Lives in the
+ * same package as {@link Genome}, which is package-private.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GenomeBenchmark
+{
+	private int parent;
+	private int partner;
+	private long counter;
+
+
+	@Setup
+	public void setup()
+	{
+		parent = Genome.START;
+		partner = Genome.pack(0.6f, 0.8f, 0.7f);
+	}
+
+
+	@Benchmark
+	public int reproduce()
+	{
+		return Genome.reproduce(parent, partner, CellRandom.mix(counter++));
+	}
+}
@@ -0,0 +1,13 @@
+#ifdef GL_ES
+#define LOWP lowp
+precision mediump float;
+#else
+#define LOWP
+#endif
+
+varying LOWP vec4 vColor;
+
+void main()
+{
+  gl_FragColor = vColor;
+}
@@ -0,0 +1,15 @@
+#ifdef GL_ES
+precision mediump float;
+#endif
+
+varying vec2 vTexCoords;
+
+uniform sampler2D u_texture;
+
+// RGB = genome, alpha = 1 if the cell is alive.
+void main()
+{
+  vec4 state = texture2D(u_texture, vTexCoords);
+  
+  gl_FragColor = vec4(state.rgb * state.a, 1.0);
+}
@@ -0,0 +1,24 @@
+#ifdef GL_ES
+precision mediump float;
+#endif
+
+varying vec2 vTexCoords;
+
+uniform sampler2D u_texture;
+uniform float u_maxHealth;
+
+// Red = type (0 = nothing, 1 = predator, 2 = prey), green = health (saturated at 255).
+void main()
+{
+  vec4 state = texture2D(u_texture, vTexCoords) * 255.0;
+  float type = floor(state.r + 0.5);
+  float factor = (state.g / u_maxHealth) * 0.75 + 0.25;
+  
+  vec3 color = vec3(0.0);
+  if (type == 1.0)
+    color = vec3(1.0, 0.0, 0.0);
+  else if (type == 2.0)
+    color = vec3(0.0, 1.0, 0.0);
+  
+  gl_FragColor = vec4(clamp(color * factor, 0.0, 1.0), 1.0);
+}
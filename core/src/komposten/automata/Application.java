@@ -13,11 +13,27 @@ import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.profiling.GL30Profiler;
 
 import komposten.automata.backend.Engine;
+import komposten.automata.backend.Metrics;
+import komposten.automata.backend.Metrics.Cache;
+import komposten.automata.backend.Metrics.Phase;
+import komposten.automata.backend.RollingStatistic;
 import komposten.automata.backend.ShaderFactory;
+import komposten.automata.life.HashLife;
+import komposten.automata.playback.Playback;
 
 
 public class Application extends ApplicationAdapter
 {
+	/** The per-frame time budget used when fast-forwarding, leaving time to render at 60 FPS. */
+	private static final float FAST_FORWARD_BUDGET = 12;
+	private static final float ZOOM_STEP = 1.25f;
+	private static final float MIN_ZOOM = 1 / 16f;
+	private static final float MAX_ZOOM = 1024;
+	/** How far the arrow keys pan the camera, in screen pixels per second. */
+	private static final float PAN_SPEED = 600;
+	/** How far PAGE UP and PAGE DOWN seek in a playback. In HashLife they double or halve the generations per tick instead. */
+	private static final int SEEK_TICKS = 1000;
+	
 	private OrthographicCamera orthographicCamera;
 	private PerspectiveCamera perspectiveCamera;
 	private SpriteBatch batch;
@@ -27,9 +43,45 @@ public class Application extends ApplicationAdapter
 	private Engine engine;
 	
 	private double timer;
-	private double gcTimer;
 	
 	private boolean debug;
+	private int threads;
+	private int columns;
+	private int rows;
+	
+	private int dragX;
+	private int dragY;
+	
+	
+	public Application()
+	{
+		this(0);
+	}
+	
+	
+	/**
+	 * @param threads The number of threads to update the automata on, or 0 to use
+	 *          one thread per available processor.
+	 */
+	public Application(int threads)
+	{
+		this(threads, 0, 0);
+	}
+	
+	
+	/**
+	 * @param threads The number of threads to update the automata on, or 0 to use
+	 *          one thread per available processor.
+	 * @param columns The number of columns in the grids, or 0 to fit the window.
+	 * @param rows The number of rows in the grids, or 0 to fit the window.
+	 */
+	public Application(int threads, int columns, int rows)
+	{
+		this.threads = threads;
+		this.columns = columns;
+		this.rows = rows;
+	}
+	
 	
 	@Override
 	public void create()
@@ -38,14 +90,16 @@ public class Application extends ApplicationAdapter
 		int height = Gdx.graphics.getHeight();
 		
 		orthographicCamera = new OrthographicCamera(width, height);
-		orthographicCamera.translate(orthographicCamera.viewportWidth / 2, orthographicCamera.viewportHeight / 2, 0);
-		orthographicCamera.update();
+		resetCamera();
 		
 		perspectiveCamera = new PerspectiveCamera(90, width, height);
 		
 		ShaderFactory.initialise(orthographicCamera);
 		
-		engine = new Engine(width, height, orthographicCamera, perspectiveCamera);
+		engine = new Engine(width, height, columns, rows, orthographicCamera, perspectiveCamera);
+		if (threads > 0)
+			engine.setThreadCount(threads);
+		engine.setPrewarming(true);
 		batch = new SpriteBatch();
 		font = new BitmapFont();
 		
@@ -57,17 +111,11 @@ public class Application extends ApplicationAdapter
 	public void render()
 	{
 		timer += Gdx.graphics.getDeltaTime();
-		gcTimer += Gdx.graphics.getDeltaTime();
-		
-		if (gcTimer > 60)
-		{
-			runGC();
-			gcTimer = 0;
-		}
 		
 		Gdx.gl.glClearColor(0, 0, 0, 1);
 		Gdx.gl.glClear(GL30.GL_COLOR_BUFFER_BIT);
 		
+		panCamera(Gdx.graphics.getDeltaTime());
 		engine.update();
 		engine.render();
 		
@@ -75,26 +123,72 @@ public class Application extends ApplicationAdapter
 		int x = 10;
 		int y = Gdx.graphics.getHeight() - 10;
 		font.draw(batch, "Automata: " + engine.getCurrentAutomata().getName(), x, y);
+		font.draw(batch, getSpeedText(), x, y - 20);
 		if (debug)
 		{
-			drawDebug(x, y - 30);
+			drawDebug(x, y - 50);
 		}
 		engine.renderText(font, batch);
 		batch.end();
 	}
 
 
-	private void runGC()
+	private void resetCamera()
 	{
-		Thread thread = new Thread(new Runnable()
+		orthographicCamera.zoom = 1;
+		orthographicCamera.position.set(orthographicCamera.viewportWidth / 2, orthographicCamera.viewportHeight / 2, 0);
+		orthographicCamera.update();
+	}
+	
+	
+	private void panCamera(float deltaTime)
+	{
+		float distance = PAN_SPEED * deltaTime * orthographicCamera.zoom;
+		float x = 0;
+		float y = 0;
+		
+		if (Gdx.input.isKeyPressed(Input.Keys.LEFT))
+			x -= distance;
+		if (Gdx.input.isKeyPressed(Input.Keys.RIGHT))
+			x += distance;
+		if (Gdx.input.isKeyPressed(Input.Keys.DOWN))
+			y -= distance;
+		if (Gdx.input.isKeyPressed(Input.Keys.UP))
+			y += distance;
+		
+		if (x != 0 || y != 0)
 		{
-			@Override
-			public void run()
-			{
-				System.gc();
-			}
-		});
-		thread.start();
+			orthographicCamera.translate(x, y, 0);
+			orthographicCamera.update();
+		}
+	}
+	
+	
+	private void zoomCamera(int amount)
+	{
+		float zoom = orthographicCamera.zoom * (float) Math.pow(ZOOM_STEP, amount);
+		orthographicCamera.zoom = Math.max(MIN_ZOOM, Math.min(zoom, MAX_ZOOM));
+		orthographicCamera.update();
+	}
+
+
+	private String getSpeedText()
+	{
+		String speed = String.format("Ticks/s: %.0f", engine.getTicksPerSecond());
+		
+		if (engine.getFrameBudget() > 0)
+			speed += String.format(" (fast-forward, %.0f ms/frame)", engine.getFrameBudget());
+		else if (engine.getTicksPerFrame() > 1)
+			speed += " (" + engine.getTicksPerFrame() + " ticks/frame)";
+		
+		if (engine.isSavingCheckpoint())
+			speed += " - saving checkpoint...";
+		if (engine.isRecording())
+			speed += " - recording";
+		if (engine.isExporting())
+			speed += " - exporting populations";
+		
+		return speed;
 	}
 
 
@@ -105,18 +199,59 @@ public class Application extends ApplicationAdapter
 		String shaderSwitches = "Shader switches: " + GL30Profiler.shaderSwitches;
 		String textureBinds = "Texture bindings: " + GL30Profiler.textureBindings;
 		String time = "Timer: " + formatTime((long)(timer*1E9));
+		String rendering = "State rendering (F2): " + (engine.getCurrentAutomata().isStateRendering() ? "on" : "off");
+		String memory = String.format("Automata in memory: %d / %d (%.1f / %d MB)", engine.getCreatedAutomataCount(),
+				engine.getAutomataCount(), engine.getMemoryUsage() / 1E6, engine.getMemoryBudget() / 1000000);
 		
 		font.draw(batch, fps, x, y);
 		font.draw(batch, drawCalls, x, y - 20);
 		font.draw(batch, shaderSwitches, x, y - 40);
 		font.draw(batch, textureBinds, x, y - 60);
 		font.draw(batch, time, x, y - 80);
+		font.draw(batch, rendering, x, y - 100);
+		font.draw(batch, memory, x, y - 120);
+		drawMetrics(engine.getCurrentAutomata().getMetrics(), x, y - 150);
 		font.getCache().clear();
 
 		GL30Profiler.reset();
 	}
 
 
+	private void drawMetrics(Metrics metrics, int x, int y)
+	{
+		font.draw(batch, "Timings (p50 / p99):", x, y);
+		
+		for (Phase phase : Phase.values())
+		{
+			RollingStatistic timings = metrics.getTimings(phase);
+			String text = String.format("  %s: %.2f / %.2f ms", phase, timings.getPercentile(50) / 1E6,
+					timings.getPercentile(99) / 1E6);
+			y -= 20;
+			font.draw(batch, text, x, y);
+		}
+		
+		RollingStatistic changedCells = metrics.getChangedCells();
+		RollingStatistic uploadedBytes = metrics.getUploadedBytes();
+		String changed = String.format("Changed cells/frame: %d / %d", changedCells.getPercentile(50),
+				changedCells.getPercentile(99));
+		String uploaded = String.format("Uploaded/frame: %.1f / %.1f kB", uploadedBytes.getPercentile(50) / 1024f,
+				uploadedBytes.getPercentile(99) / 1024f);
+		font.draw(batch, changed, x, y - 20);
+		font.draw(batch, uploaded, x, y - 40);
+		y -= 40;
+		
+		for (Cache cache : Cache.values())
+		{
+			double hitRate = metrics.getCacheHitRate(cache);
+			if (hitRate >= 0)
+			{
+				y -= 20;
+				font.draw(batch, String.format("%s cache hit rate: %.1f%%", cache, hitRate * 100), x, y);
+			}
+		}
+	}
+
+
 	private String formatTime(long nanoTime)
 	{
 		int minutes = (int) (nanoTime / 60E9d);
@@ -154,6 +289,72 @@ public class Application extends ApplicationAdapter
 				toggleDebug();
 				return true;
 			}
+			else if (keycode == Input.Keys.F2)
+			{
+				Automaton automaton = engine.getCurrentAutomata();
+				automaton.setStateRendering(!automaton.isStateRendering());
+				return true;
+			}
+			else if (keycode == Input.Keys.F)
+			{
+				engine.setFrameBudget(engine.getFrameBudget() > 0 ? 0 : FAST_FORWARD_BUDGET);
+				return true;
+			}
+			else if (keycode == Input.Keys.PLUS || keycode == Input.Keys.EQUALS)
+			{
+				engine.setTicksPerFrame(engine.getTicksPerFrame() * 2);
+				return true;
+			}
+			else if (keycode == Input.Keys.MINUS)
+			{
+				engine.setTicksPerFrame(engine.getTicksPerFrame() / 2);
+				return true;
+			}
+			else if (keycode == Input.Keys.F5)
+			{
+				engine.saveCheckpoint();
+				return true;
+			}
+			else if (keycode == Input.Keys.F9)
+			{
+				engine.restoreCheckpoint();
+				return true;
+			}
+			else if (keycode == Input.Keys.R)
+			{
+				engine.toggleRecording();
+				return true;
+			}
+			else if (keycode == Input.Keys.E)
+			{
+				engine.toggleExport();
+				return true;
+			}
+			else if (keycode == Input.Keys.L)
+			{
+				engine.loadRecording();
+				return true;
+			}
+			else if (keycode == Input.Keys.PAGE_UP || keycode == Input.Keys.PAGE_DOWN)
+			{
+				Automaton automaton = engine.getCurrentAutomata();
+				if (automaton instanceof Playback)
+				{
+					int ticks = (keycode == Input.Keys.PAGE_UP ? SEEK_TICKS : -SEEK_TICKS);
+					((Playback) automaton).seek(automaton.getSimulation().getTicks() + ticks);
+					return true;
+				}
+				else if (automaton instanceof HashLife)
+				{
+					((HashLife) automaton).changeStepExponent(keycode == Input.Keys.PAGE_UP ? 1 : -1);
+					return true;
+				}
+			}
+			else if (keycode == Input.Keys.HOME)
+			{
+				resetCamera();
+				return true;
+			}
 			else if (keycode == Input.Keys.ESCAPE || keycode == Input.Keys.P)
 			{
 				engine.togglePaused();
@@ -180,5 +381,34 @@ public class Application extends ApplicationAdapter
 		{
 			return false;
 		}
+		
+		
+		@Override
+		public boolean touchDown(int screenX, int screenY, int pointer, int button)
+		{
+			dragX = screenX;
+			dragY = screenY;
+			return true;
+		}
+		
+		
+		@Override
+		public boolean touchDragged(int screenX, int screenY, int pointer)
+		{
+			float zoom = orthographicCamera.zoom;
+			orthographicCamera.translate((dragX - screenX) * zoom, (screenY - dragY) * zoom, 0);
+			orthographicCamera.update();
+			dragX = screenX;
+			dragY = screenY;
+			return true;
+		}
+		
+		
+		@Override
+		public boolean scrolled(int amount)
+		{
+			zoomCamera(amount);
+			return true;
+		}
 	};
 }
@@ -4,13 +4,20 @@ import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.utils.Disposable;
 
+import komposten.automata.backend.Metrics;
+import komposten.automata.backend.MetricsRegistry;
+import komposten.automata.backend.Simulation;
+
 public abstract class Automaton implements Disposable
 {
 	private String name;
+	private boolean stateRendering;
+	private Metrics metrics;
 	
 	public Automaton(String name)
 	{
 		this.name = name;
+		metrics = MetricsRegistry.get(name);
 	}
 	
 	
@@ -20,7 +27,92 @@ public abstract class Automaton implements Disposable
 	}
 	
 	
-	protected abstract void createStartingGrid();
+	public Metrics getMetrics()
+	{
+		return metrics;
+	}
+	
+	
+	public boolean isStateRendering()
+	{
+		return stateRendering;
+	}
+	
+	
+	/**
+	 * Switches between colouring the cells on the CPU and uploading their raw state
+	 * to be coloured by a shader. Does nothing if the automaton does not
+	 * {@link #supportsStateRendering() support} state rendering.
+	 */
+	public void setStateRendering(boolean stateRendering)
+	{
+		if (this.stateRendering == stateRendering || !supportsStateRendering())
+			return;
+		
+		this.stateRendering = stateRendering;
+		
+		Simulation simulation = getSimulation();
+		simulation.getChangedCells().set(0, simulation.getCellCount());
+	}
+	
+	
+	public boolean supportsStateRendering()
+	{
+		return false;
+	}
+	
+	
+	/**
+	 * @return The name of the {@link komposten.automata.backend.ShaderFactory}
+	 *         shader that colours the states from {@link #getCellState(int)}, or
+	 *         <code>null</code> if the automaton does not pack its cell states.
+	 */
+	public String getStateShader()
+	{
+		return null;
+	}
+	
+	
+	/**
+	 * @return The state of a cell, packed as <code>0xRRGGBBAA</code> for the
+	 *         {@link #getStateShader() state shader}.
+	 */
+	public int getCellState(int index)
+	{
+		return 0;
+	}
+	
+	
+	/**
+	 * @return A rough estimate of the memory used by the automaton, in bytes.
+	 */
+	public long getMemoryEstimate()
+	{
+		return getSimulation().getMemoryEstimate();
+	}
+	
+	
+	/**
+	 * Frees the meshes and textures used to draw the automaton, to save memory while
+	 * it is not shown. They are created again the next time the automaton is
+	 * rendered.
+	 */
+	public void releaseRenderResources()
+	{
+	}
+	
+	
+	/**
+	 * @return <code>true</code> if the automaton has meshes or textures that
+	 *         {@link #releaseRenderResources()} would free.
+	 */
+	public boolean hasRenderResources()
+	{
+		return false;
+	}
+	
+	
+	public abstract Simulation getSimulation();
 	public abstract void update();
 	public abstract void render();
 	public abstract void renderText(BitmapFont font, SpriteBatch batch);
@@ -0,0 +1,324 @@
+package komposten.automata;
+
+import java.util.BitSet;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL30;
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+
+import komposten.automata.backend.Metrics;
+import komposten.automata.backend.Metrics.Phase;
+import komposten.automata.backend.ShaderFactory;
+import komposten.automata.backend.Simulation;
+import komposten.automata.backend.rendering.AbstractMesh;
+import komposten.automata.backend.rendering.GridMesh;
+import komposten.automata.backend.rendering.GridPixmap;
+import komposten.automata.backend.rendering.GridViewport;
+import komposten.automata.backend.rendering.GridViewport.CellColors;
+import komposten.automata.backend.rendering.IndexGridMesh;
+import komposten.automata.backend.rendering.Quad;
+import komposten.automata.backend.rendering.StateTexture;
+import komposten.automata.backend.rendering.VertexFormat;
+
+/**
+ * An automaton that draws the cells of its simulation as a grid. This class owns
+ * the rendering: the {@link GridViewport}, finding the slots with changed cells,
+ * colouring them (or, with state rendering, uploading their packed states) and
+ * drawing them. Subclasses only provide the simulation and the colour and state of
+ * a cell.
+ * <p>
+ * The meshes and textures are created the first time they are needed, so the
+ * automaton can be created without a GL context (e.g. on a background thread).
+ */
+public abstract class GridAutomaton extends Automaton
+{
+	/**
+	 * How the cells are drawn when they are coloured on the CPU.
+	 */
+	public enum Renderer
+	{
+		/** A {@link GridMesh} with one quad per cell, drawn with the compact shader. */
+		Mesh,
+		/**
+		 * An {@link IndexGridMesh} with four vertices and six indices per cell, drawn
+		 * with the compact shader.
+		 */
+		IndexMesh,
+		/**
+		 * A {@link GridPixmap} with one texel per cell, drawn as a texture on a
+		 * {@link Quad}.
+		 */
+		Pixmap
+	}
+
+	private OrthographicCamera camera;
+	private Renderer renderer;
+	private int cellSize;
+	private GridViewport viewport;
+	private BitSet dirtySlots;
+	private Color color;
+
+	private GridMesh mesh;
+	private IndexGridMesh indexMesh;
+	private GridPixmap pixmap;
+	private Quad quad;
+	private StateTexture stateTexture;
+
+	private CellColors cellColors = new CellColors()
+	{
+		@Override
+		public Color getColor(int index, Color color)
+		{
+			return getCellColor(index, color);
+		}
+	};
+
+
+	/**
+	 * @param columns The number of columns in the grid.
+	 * @param rows The number of rows in the grid.
+	 * @param width The width of the screen.
+	 * @param height The height of the screen.
+	 * @param cellSize The size of a cell on the screen, when not zoomed.
+	 */
+	public GridAutomaton(String name, int columns, int rows, int width, int height, int cellSize, Renderer renderer,
+			OrthographicCamera orthographicCamera)
+	{
+		super(name);
+		this.renderer = renderer;
+		this.cellSize = cellSize;
+		camera = orthographicCamera;
+		viewport = new GridViewport(camera, columns, rows, width, height, cellSize);
+		dirtySlots = new BitSet(viewport.getSlotCount());
+		color = new Color();
+	}
+
+
+	/**
+	 * @return The colour of a cell, when it is coloured on the CPU.
+	 */
+	protected abstract Color getCellColor(int index, Color color);
+
+
+	@Override
+	public void update()
+	{
+		getSimulation().update();
+	}
+
+
+	@Override
+	public boolean supportsStateRendering()
+	{
+		return getStateShader() != null;
+	}
+
+
+	/**
+	 * Rebuilds the slots that contain changed cells, or all slots if the viewport has
+	 * moved. Changed cells outside the viewport are ignored, since they are read
+	 * again once the viewport moves over them.
+	 */
+	private void refreshCells()
+	{
+		BitSet changedCells = getSimulation().getChangedCells();
+		boolean moved = viewport.update();
+
+		if (!moved && changedCells.isEmpty())
+			return;
+
+		Metrics metrics = getMetrics();
+		metrics.recordChangedCells(changedCells.cardinality());
+		metrics.begin(Phase.Rebuild);
+
+		if (moved)
+			dirtySlots.set(0, viewport.getSlotCount());
+		else
+			viewport.collectChangedSlots(changedCells, dirtySlots);
+		changedCells.clear();
+
+		AbstractMesh target;
+		if (isStateRendering())
+		{
+			if (stateTexture == null)
+				stateTexture = new StateTexture(viewport.getColumnCount(), viewport.getRowCount());
+
+			//States cannot be averaged, so a slot with a stride above 1 shows its first cell.
+			for (int i = dirtySlots.nextSetBit(0); i >= 0; i = dirtySlots.nextSetBit(i+1))
+			{
+				int index = viewport.getCellIndex(i, 0, 0);
+				stateTexture.setState(i, (index < 0 ? 0 : getCellState(index)));
+			}
+
+			target = stateTexture;
+		}
+		else
+		{
+			target = getColorTarget();
+
+			for (int i = dirtySlots.nextSetBit(0); i >= 0; i = dirtySlots.nextSetBit(i+1))
+			{
+				target.setColor(viewport.getSlotColor(i, cellColors, color), i);
+			}
+		}
+
+		dirtySlots.clear();
+		metrics.end(Phase.Rebuild);
+
+		metrics.begin(Phase.Upload);
+		if (target == mesh)
+			mesh.refreshMesh();
+		else if (target == indexMesh)
+			indexMesh.refreshMesh();
+		else if (target == pixmap)
+			pixmap.refreshTexture();
+		else
+			stateTexture.refreshTexture();
+		metrics.end(Phase.Upload);
+		metrics.recordUploadedBytes(target.pollUploadedBytes());
+	}
+
+
+	private AbstractMesh getColorTarget()
+	{
+		int width = viewport.getColumnCount() * cellSize;
+		int height = viewport.getRowCount() * cellSize;
+
+		if (renderer == Renderer.Mesh)
+		{
+			if (mesh == null)
+				mesh = new GridMesh(width, height, cellSize, VertexFormat.Compact);
+			return mesh;
+		}
+		else if (renderer == Renderer.IndexMesh)
+		{
+			if (indexMesh == null)
+				indexMesh = new IndexGridMesh(width, height, cellSize, VertexFormat.Compact);
+			return indexMesh;
+		}
+		else
+		{
+			if (pixmap == null)
+				pixmap = new GridPixmap(width, height, cellSize, GridPixmap.Resolution.Cell);
+			return pixmap;
+		}
+	}
+
+
+	private Quad getQuad()
+	{
+		if (quad == null)
+			quad = new Quad(viewport.getColumnCount() * cellSize, viewport.getRowCount() * cellSize, true);
+		return quad;
+	}
+
+
+	@Override
+	public void render()
+	{
+		refreshCells();
+
+		getMetrics().begin(Phase.Draw);
+
+		if (isStateRendering())
+		{
+			ShaderProgram shader = ShaderFactory.getShader(getStateShader());
+			shader.begin();
+			shader.setUniformMatrix("u_projTrans", viewport.getTransform(true));
+			stateTexture.getTexture().bind(0);
+			getQuad().render(shader, GL30.GL_TRIANGLES);
+			shader.end();
+		}
+		else if (renderer == Renderer.Mesh || renderer == Renderer.IndexMesh)
+		{
+			ShaderProgram shader = ShaderFactory.getShader(ShaderFactory.COMPACT_COLOR);
+			shader.begin();
+			shader.setUniformMatrix("u_projTrans", viewport.getTransform(false));
+			if (renderer == Renderer.Mesh)
+				mesh.render(shader);
+			else
+				indexMesh.render(shader);
+			shader.end();
+		}
+		else
+		{
+			ShaderProgram shader = ShaderFactory.getShader(ShaderFactory.DEFAULT_TEXTURE);
+			shader.begin();
+			shader.setUniformMatrix("u_projTrans", viewport.getTransform(true));
+			pixmap.getTexture().bind(0);
+			getQuad().render(shader, GL30.GL_TRIANGLES);
+			shader.end();
+		}
+
+		getMetrics().end(Phase.Draw);
+	}
+
+
+	@Override
+	public long getMemoryEstimate()
+	{
+		long estimate = super.getMemoryEstimate() + viewport.getSlotCount() / 8;
+		if (mesh != null)
+			estimate += mesh.getMemoryEstimate();
+		if (indexMesh != null)
+			estimate += indexMesh.getMemoryEstimate();
+		if (pixmap != null)
+			estimate += pixmap.getMemoryEstimate();
+		if (stateTexture != null)
+			estimate += stateTexture.getMemoryEstimate();
+		return estimate;
+	}
+
+
+	/**
+	 * Disposes the meshes and textures and marks all cells as changed, so that they
+	 * are created and filled again the next time the automaton is rendered.
+	 */
+	@Override
+	public void releaseRenderResources()
+	{
+		if (!hasRenderResources())
+			return;
+
+		disposeRenderResources();
+		mesh = null;
+		indexMesh = null;
+		pixmap = null;
+		quad = null;
+		stateTexture = null;
+
+		Simulation simulation = getSimulation();
+		simulation.getChangedCells().set(0, simulation.getCellCount());
+	}
+
+
+	@Override
+	public boolean hasRenderResources()
+	{
+		return mesh != null || indexMesh != null || pixmap != null || quad != null || stateTexture != null;
+	}
+
+
+	private void disposeRenderResources()
+	{
+		if (mesh != null)
+			mesh.dispose();
+		if (indexMesh != null)
+			indexMesh.dispose();
+		if (pixmap != null)
+			pixmap.dispose();
+		if (quad != null)
+			quad.dispose();
+		if (stateTexture != null)
+			stateTexture.dispose();
+	}
+
+
+	@Override
+	public void dispose()
+	{
+		disposeRenderResources();
+		getSimulation().dispose();
+	}
+}
@@ -0,0 +1,166 @@
+package komposten.automata.backend;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size bit set that can be modified from several threads at once.
+ * <p>
+ * Tiles that are updated in parallel by a {@link TileScheduler} never write to
+ * the same cells, but the cells they write to can share a 64-bit word. A
+ * {@link java.util.BitSet} could then lose one of the writes, so this set uses
+ * compare-and-set for modifications. Reads are plain (volatile) loads.
+ */
+public class AtomicBitSet
+{
+	private static final int ADDRESS_BITS = 6;
+
+	private AtomicLongArray words;
+	private int size;
+
+
+	public AtomicBitSet(int size)
+	{
+		this.size = size;
+		words = new AtomicLongArray((size + 63) >>> ADDRESS_BITS);
+	}
+
+
+	public int size()
+	{
+		return size;
+	}
+
+
+	public boolean get(int index)
+	{
+		return (words.get(index >>> ADDRESS_BITS) & (1L << index)) != 0;
+	}
+
+
+	public void set(int index)
+	{
+		int word = index >>> ADDRESS_BITS;
+		long mask = 1L << index;
+		long value;
+
+		do
+		{
+			value = words.get(word);
+			if ((value & mask) != 0)
+				return;
+		}
+		while (!words.compareAndSet(word, value, value | mask));
+	}
+
+
+	public void clear(int index)
+	{
+		int word = index >>> ADDRESS_BITS;
+		long mask = 1L << index;
+		long value;
+
+		do
+		{
+			value = words.get(word);
+			if ((value & mask) == 0)
+				return;
+		}
+		while (!words.compareAndSet(word, value, value & ~mask));
+	}
+
+
+	public void set(int index, boolean value)
+	{
+		if (value)
+			set(index);
+		else
+			clear(index);
+	}
+
+
+	/**
+	 * @return The index of the first set bit at or after <code>from</code>, or -1
+	 *         if there is none.
+	 */
+	public int nextSetBit(int from)
+	{
+		return nextSetBit(from, size);
+	}
+
+
+	/**
+	 * Finds the first set bit in the range <code>[from, to)</code>. The words are
+	 * read as the search goes, so bits that are set in the range during an
+	 * iteration will be found once the iteration reaches them.
+	 * 
+	 * @return The index of the first set bit in the range, or -1 if there is none.
+	 */
+	public int nextSetBit(int from, int to)
+	{
+		to = Math.min(to, size);
+		if (from >= to)
+			return -1;
+
+		int word = from >>> ADDRESS_BITS;
+		int lastWord = (to - 1) >>> ADDRESS_BITS;
+		long value = words.get(word) & (-1L << from);
+
+		while (true)
+		{
+			if (value != 0)
+			{
+				int index = (word << ADDRESS_BITS) + Long.numberOfTrailingZeros(value);
+				return (index < to ? index : -1);
+			}
+
+			if (++word > lastWord)
+				return -1;
+			value = words.get(word);
+		}
+	}
+
+
+	public int cardinality()
+	{
+		int count = 0;
+		for (int i = 0; i < words.length(); i++)
+			count += Long.bitCount(words.get(i));
+		return count;
+	}
+
+
+	public void clear()
+	{
+		for (int i = 0; i < words.length(); i++)
+			words.set(i, 0);
+	}
+
+
+	/**
+	 * @return The number of 64-bit words used to store the bits.
+	 */
+	public int getWordCount()
+	{
+		return words.length();
+	}
+
+
+	/**
+	 * @return The bits <code>[64 * word, 64 * word + 64)</code>, with the lowest
+	 *         index in the lowest bit.
+	 */
+	public long getWord(int word)
+	{
+		return words.get(word);
+	}
+
+
+	/**
+	 * Replaces the bits <code>[64 * word, 64 * word + 64)</code>. Used for bulk
+	 * copies, so it must not be called while the set is modified by other threads.
+	 */
+	public void setWord(int word, long bits)
+	{
+		words.set(word, bits);
+	}
+}
@@ -0,0 +1,226 @@
+package komposten.automata.backend;
+
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import komposten.automata.Automaton;
+
+/**
+ * One of the automata that can be selected in the {@link Engine}. The automaton is
+ * only created when it is first needed, either on the calling thread or in the
+ * background by {@link #prewarm(ExecutorService)}, and can be evicted again to free
+ * its memory. An evicted automaton is saved to a checkpoint so that it can continue
+ * where it left off once it is created again.
+ */
+class AutomatonSlot
+{
+	/**
+	 * Creates the automaton of a slot. The automaton may be created on a background
+	 * thread, so its constructor must not use the GL context.
+	 */
+	interface Factory
+	{
+		Automaton create();
+	}
+
+	private Factory factory;
+	private Automaton automaton;
+	private Future<Automaton> pending;
+	private Path evictedState;
+	private long lastSelected;
+	private boolean evictionFailed;
+
+
+	public AutomatonSlot(Factory factory)
+	{
+		this.factory = factory;
+	}
+
+
+	/**
+	 * Creates a slot for an automaton that already exists and cannot be created
+	 * again, so it is never evicted.
+	 */
+	public AutomatonSlot(Automaton automaton)
+	{
+		this.automaton = automaton;
+	}
+
+
+	/**
+	 * @return The automaton, or <code>null</code> if it has not been created or has
+	 *         been evicted.
+	 */
+	public Automaton getAutomaton()
+	{
+		return automaton;
+	}
+
+
+	public boolean isCreated()
+	{
+		return automaton != null;
+	}
+
+
+	/**
+	 * @return <code>true</code> if the automaton exists, can be created again, and
+	 *         has not failed to be saved since it was last selected.
+	 */
+	public boolean isEvictable()
+	{
+		return factory != null && automaton != null && !evictionFailed;
+	}
+
+
+	/**
+	 * Marks that the state of the automaton could not be saved, so that it is kept
+	 * instead of being evicted.
+	 */
+	public void setEvictionFailed(boolean evictionFailed)
+	{
+		this.evictionFailed = evictionFailed;
+	}
+
+
+	/**
+	 * @return <code>true</code> if the slot can be pre-warmed, i.e. its automaton
+	 *         has never been created and is not being created.
+	 */
+	public boolean isPrewarmable()
+	{
+		return automaton == null && pending == null && evictedState == null;
+	}
+
+
+	/**
+	 * Creates the automaton if it does not exist. Waits for a pre-warm in progress
+	 * instead of starting a second one.
+	 *
+	 * @return <code>true</code> if the automaton was created by this call.
+	 */
+	public boolean create()
+	{
+		if (automaton != null)
+			return false;
+
+		takePrewarmed();
+		if (automaton == null)
+			automaton = factory.create();
+
+		return true;
+	}
+
+
+	private void takePrewarmed()
+	{
+		if (pending == null)
+			return;
+
+		try
+		{
+			automaton = pending.get();
+		}
+		catch (ExecutionException e)
+		{
+			System.err.println("Could not pre-warm the automaton: " + e.getCause());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		pending = null;
+	}
+
+
+	/**
+	 * Starts creating the automaton on the executor, if it can be pre-warmed.
+	 */
+	public void prewarm(ExecutorService executor)
+	{
+		if (!isPrewarmable())
+			return;
+
+		pending = executor.submit(new Callable<Automaton>()
+		{
+			@Override
+			public Automaton call()
+			{
+				return factory.create();
+			}
+		});
+	}
+
+
+	/**
+	 * Takes over the automaton from a finished pre-warm.
+	 *
+	 * @return <code>true</code> if a pre-warm has successfully finished since the
+	 *         last call.
+	 */
+	public boolean pollPrewarm()
+	{
+		if (pending == null || !pending.isDone())
+			return false;
+
+		takePrewarmed();
+		return automaton != null;
+	}
+
+
+	/**
+	 * Disposes the automaton. Its state should have been saved to
+	 * <code>evictedState</code> first, unless the slot should start over.
+	 */
+	public void evict(Path evictedState)
+	{
+		automaton.dispose();
+		automaton = null;
+		this.evictedState = evictedState;
+	}
+
+
+	/**
+	 * @return The checkpoint of the automaton from when it was evicted, or
+	 *         <code>null</code> if it has not been evicted (or has been restored).
+	 */
+	public Path getEvictedState()
+	{
+		return evictedState;
+	}
+
+
+	public void clearEvictedState()
+	{
+		evictedState = null;
+	}
+
+
+	public long getLastSelected()
+	{
+		return lastSelected;
+	}
+
+
+	public void setLastSelected(long lastSelected)
+	{
+		this.lastSelected = lastSelected;
+	}
+
+
+	/**
+	 * Disposes the automaton, and waits for a pre-warm in progress so that its
+	 * automaton can be disposed as well.
+	 */
+	public void dispose()
+	{
+		takePrewarmed();
+		if (automaton != null)
+			automaton.dispose();
+		automaton = null;
+	}
+}
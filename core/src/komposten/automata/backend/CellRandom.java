@@ -0,0 +1,117 @@
+package komposten.automata.backend;
+
+/**
+ * A counter-based random number generator. Instead of drawing values in sequence,
+ * each value is derived from <code>(seed, tick, stream, counter)</code> by a
+ * hash, so the value a cell gets does not depend on which thread updates it or in
+ * which order the cells are updated. A simulation with the same seed therefore
+ * gives the same result regardless of the number of threads.
+ * <p>
+ * Each call to {@link #get(int, int)} returns 64 random bits, which can be split
+ * into several smaller values using {@link #toInt(long, int)} and
+ * {@link #toFloat(long)} on shifted copies of the bits.
+ */
+public class CellRandom
+{
+	/** The number of neighbour directions that can be taken from one value. */
+	public static final int DIRECTIONS_PER_VALUE = 4;
+
+	/** The stream used by {@link #getDirectionBits(int)}. Other uses should pick another stream. */
+	public static final int DIRECTION_STREAM = 0;
+
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private long seed;
+	private long tickKey;
+
+
+	public CellRandom(long seed)
+	{
+		this.seed = seed;
+		setTick(0);
+	}
+
+
+	public long getSeed()
+	{
+		return seed;
+	}
+
+
+	/**
+	 * Sets the tick that subsequent values are derived from.
+	 */
+	public void setTick(long tick)
+	{
+		tickKey = mix(seed + tick * GOLDEN_GAMMA);
+	}
+
+
+	/**
+	 * @param stream Separates different uses of the generator, so that they do not
+	 *          get the same values for the same counter.
+	 * @param counter Usually a cell index.
+	 * @return 64 random bits.
+	 */
+	public long get(int stream, int counter)
+	{
+		long key = ((long) stream << 32) | (counter & 0xFFFFFFFFL);
+		return mix(tickKey + key * GOLDEN_GAMMA);
+	}
+
+
+	/**
+	 * Gets the random neighbour direction for a cell. The directions of
+	 * {@link #DIRECTIONS_PER_VALUE} consecutive cells are taken from the same
+	 * value, so callers that scan cells in order only need to call
+	 * {@link #getDirectionBits(int)} for every fourth cell.
+	 * 
+	 * @return A direction between 0 and 8, where <code>direction / 3 - 1</code> is
+	 *         the row offset and <code>direction % 3 - 1</code> the column offset.
+	 */
+	public static int getDirection(long bits, int index)
+	{
+		int slot = index % DIRECTIONS_PER_VALUE;
+		return toInt(bits << (16 * slot), 9);
+	}
+
+
+	/**
+	 * @return The bits that contain the direction for the specified cell.
+	 */
+	public long getDirectionBits(int index)
+	{
+		return get(DIRECTION_STREAM, index / DIRECTIONS_PER_VALUE);
+	}
+
+
+	/**
+	 * @return A value between 0 (inclusive) and <code>bound</code> (exclusive),
+	 *         taken from the 16 highest bits.
+	 */
+	public static int toInt(long bits, int bound)
+	{
+		return (int) (((bits >>> 48) * bound) >>> 16);
+	}
+
+
+	/**
+	 * @return A value between 0 (inclusive) and 1 (exclusive), taken from the 24
+	 *         highest bits.
+	 */
+	public static float toFloat(long bits)
+	{
+		return (bits >>> 40) * 0x1.0p-24f;
+	}
+
+
+	/**
+	 * The SplitMix64 finaliser.
+	 */
+	public static long mix(long value)
+	{
+		value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+		value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+		return value ^ (value >>> 31);
+	}
+}
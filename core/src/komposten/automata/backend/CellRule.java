@@ -0,0 +1,29 @@
+package komposten.automata.backend;
+
+import komposten.automata.backend.TileScheduler.Worker;
+
+/**
+ * The rules of an automaton in which each occupied cell acts on one random
+ * neighbour per tick. A rule only defines which cells are occupied and what
+ * happens to a cell and its neighbour, working directly on the simulation's
+ * primitive cell state. {@link RuleSimulation} owns the rest: iterating over the
+ * tiles, picking the neighbours, bounds checks and running on several threads.
+ */
+public interface CellRule
+{
+	/**
+	 * @return The first occupied column in the range
+	 *         <code>[column, endColumn)</code> of the row, or <code>-1</code> if
+	 *         there is none.
+	 */
+	public int nextOccupied(int row, int column, int endColumn);
+
+
+	/**
+	 * Updates an occupied cell. The neighbour is picked by the simulation's
+	 * {@link CellRandom}, and is always inside the grid. The rule must mark the
+	 * cells it changes with {@link Worker#markChanged(int)}, and count the cell in
+	 * {@link Worker#populations}.
+	 */
+	public void updateCell(Worker worker, int index, int row, int column, int neighbour, int neighbourRow, int neighbourColumn);
+}
@@ -0,0 +1,285 @@
+package komposten.automata.backend;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import com.badlogic.gdx.utils.Disposable;
+
+/**
+ * Saves and restores the state of {@link Simulation}s.
+ * <p>
+ * A checkpoint file has the following format (big-endian):
+ * <pre>
+ * int     magic ("CAUT")
+ * int     version
+ * short   length of the name, followed by the UTF-8 name of the simulation
+ * int     columns
+ * int     rows
+ * int     size of the state
+ * byte[]  the state from Simulation.writeState(), deflated
+ * </pre>
+ * Saving copies the state into a buffer on the calling thread (a bulk copy of
+ * the simulation's primitive arrays), and compresses and writes it on a
+ * background thread. The file is first written next to the target and then moved
+ * over it, so that a save that fails half-way does not destroy the previous
+ * checkpoint.
+ */
+public class Checkpoint implements Disposable
+{
+	public static final int MAGIC = 0x43415554;
+	public static final int VERSION = 1;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	/** The most that deflate can compress data, as uncompressed bytes per compressed byte. */
+	static final int MAX_COMPRESSION_RATIO = 1032;
+
+	private ExecutorService executor;
+	private Future<Path> lastSave;
+
+
+	public Checkpoint()
+	{
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "Checkpoint writer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+
+	/**
+	 * Copies the state of the simulation and writes it to <code>file</code> on a
+	 * background thread. The simulation can be updated as soon as this method
+	 * returns.
+	 *
+	 * @return A future that completes with <code>file</code> once the checkpoint has
+	 *         been written, or fails with the <code>IOException</code> that
+	 *         prevented it.
+	 */
+	public Future<Path> save(Simulation simulation, final Path file)
+	{
+		byte[] name = simulation.getName().getBytes(StandardCharsets.UTF_8);
+		final ByteBuffer state = ByteBuffer.allocate(simulation.getStateSize());
+		simulation.writeState(state);
+		state.flip();
+
+		final ByteBuffer header = ByteBuffer.allocate(4 + 4 + 2 + name.length + 4 + 4 + 4);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putShort((short) name.length);
+		header.put(name);
+		header.putInt(simulation.getColumnCount());
+		header.putInt(simulation.getRowCount());
+		header.putInt(state.remaining());
+		header.flip();
+
+		lastSave = executor.submit(new Callable<Path>()
+		{
+			@Override
+			public Path call() throws IOException
+			{
+				write(file, header, state);
+				return file;
+			}
+		});
+
+		return lastSave;
+	}
+
+
+	private void write(Path file, ByteBuffer header, ByteBuffer state) throws IOException
+	{
+		Path directory = file.toAbsolutePath().getParent();
+		if (directory != null)
+			Files.createDirectories(directory);
+
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			while (header.hasRemaining())
+				channel.write(header);
+
+			//Not closed, since that would close the channel before it is forced.
+			DeflaterOutputStream output = new DeflaterOutputStream(Channels.newOutputStream(channel), deflater, BUFFER_SIZE);
+			output.write(state.array(), state.arrayOffset() + state.position(), state.remaining());
+			output.finish();
+			channel.force(false);
+		}
+		finally
+		{
+			deflater.end();
+		}
+
+		try
+		{
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException e)
+		{
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+
+	/**
+	 * Replaces the state of the simulation with the one in <code>file</code>. Waits
+	 * for the last save to finish first. The simulation is left unchanged if the
+	 * file cannot be read, is for another simulation or grid size, or is corrupt.
+	 *
+	 * @throws IOException If the file cannot be read, is not a checkpoint, was
+	 *           saved from a simulation with a different name or grid size, or
+	 *           contains a state that does not fit the simulation.
+	 */
+	public void restore(Simulation simulation, Path file) throws IOException
+	{
+		waitForSave();
+
+		ByteBuffer state;
+		Inflater inflater = new Inflater();
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			ByteBuffer header = readFully(channel, 4 + 4 + 2);
+			if (header.getInt() != MAGIC)
+				throw new IOException(file + " is not a checkpoint!");
+
+			int version = header.getInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported checkpoint version: " + version + "!");
+
+			header = readFully(channel, (header.getShort() & 0xFFFF) + 4 + 4 + 4);
+			byte[] nameBytes = new byte[header.remaining() - 12];
+			header.get(nameBytes);
+			String name = new String(nameBytes, StandardCharsets.UTF_8);
+			int columns = header.getInt();
+			int rows = header.getInt();
+			int size = header.getInt();
+
+			if (!name.equals(simulation.getName()))
+				throw new IOException("The checkpoint is for " + name + ", not " + simulation.getName() + "!");
+			if (columns != simulation.getColumnCount() || rows != simulation.getRowCount())
+				throw new IOException("The checkpoint has a " + columns + "x" + rows + " grid, not "
+						+ simulation.getColumnCount() + "x" + simulation.getRowCount() + "!");
+
+			long compressedSize = channel.size() - channel.position();
+			if (size < 0 || size > compressedSize * MAX_COMPRESSION_RATIO)
+				throw new IOException("Invalid state size: " + size + "!");
+
+			state = ByteBuffer.allocate(size);
+			InputStream input = new InflaterInputStream(Channels.newInputStream(channel), inflater, BUFFER_SIZE);
+			while (state.hasRemaining())
+			{
+				int read = input.read(state.array(), state.position(), state.remaining());
+				if (read < 0)
+					throw new IOException("The checkpoint is truncated!");
+				state.position(state.position() + read);
+			}
+			state.flip();
+		}
+		finally
+		{
+			inflater.end();
+		}
+
+		Runnable restore;
+		try
+		{
+			restore = simulation.readState(state);
+		}
+		catch (BufferUnderflowException | IllegalArgumentException e)
+		{
+			throw new IOException("The checkpoint is corrupt!", e);
+		}
+
+		if (state.hasRemaining())
+			throw new IOException("The checkpoint has " + state.remaining() + " bytes too many!");
+
+		restore.run();
+	}
+
+
+	private ByteBuffer readFully(FileChannel channel, int size) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+
+		while (buffer.hasRemaining())
+		{
+			if (channel.read(buffer) < 0)
+				throw new IOException("The checkpoint is truncated!");
+		}
+
+		buffer.flip();
+		return buffer;
+	}
+
+
+	/**
+	 * Waits for the last save to finish. Failures are reported by the future
+	 * returned from {@link #save(Simulation, Path)}, not here.
+	 */
+	public void waitForSave()
+	{
+		if (lastSave == null)
+			return;
+
+		try
+		{
+			lastSave.get();
+		}
+		catch (ExecutionException e)
+		{
+			//Reported by the future returned from save().
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	/**
+	 * Finishes the saves that have been started, and stops the background thread.
+	 */
+	@Override
+	public void dispose()
+	{
+		executor.shutdown();
+
+		try
+		{
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package komposten.automata.backend;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Splits a grid into square chunks of {@link #CHUNK_SIZE} cells, which are only
+ * allocated once something is written to them.
+ * <p>
+ * A chunk is awake while it is active, i.e. while its cells are being visited or
+ * written to. Once it has been inactive for {@link #SLEEP_TICKS} ticks it falls
+ * asleep and is skipped, until a write from a neighbouring chunk wakes it again.
+ * Chunks that have been asleep for {@link #RELEASE_TICKS} ticks and are empty are
+ * released.
+ * <p>
+ * Chunks are created with compare-and-set, since tiles that are updated in
+ * parallel can write to the same (unallocated) chunk.
+ */
+public abstract class ChunkGrid<T extends ChunkGrid.Chunk>
+{
+	public static final int CHUNK_SHIFT = 6;
+	public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	public static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	public static final int CELLS_PER_CHUNK = CHUNK_SIZE * CHUNK_SIZE;
+
+	public static final int SLEEP_TICKS = 4;
+	public static final int RELEASE_TICKS = 64;
+
+	public static abstract class Chunk
+	{
+		/*
+		 * Only ever set to true while tiles are being updated, and read and cleared
+		 * between ticks, so it does not need to be volatile.
+		 */
+		private boolean active = true;
+		private int idleTicks;
+
+
+		public void markActive()
+		{
+			active = true;
+		}
+
+
+		public boolean isAwake()
+		{
+			return active || idleTicks < SLEEP_TICKS;
+		}
+
+
+		protected abstract boolean isEmpty();
+	}
+
+
+	private int chunkColumns;
+	private int chunkRows;
+	private AtomicReferenceArray<T> chunks;
+	private int allocatedChunks;
+	private int awakeChunks;
+
+
+	public ChunkGrid(int columns, int rows)
+	{
+		chunkColumns = (columns + CHUNK_MASK) >> CHUNK_SHIFT;
+		chunkRows = (rows + CHUNK_MASK) >> CHUNK_SHIFT;
+		chunks = new AtomicReferenceArray<>(chunkColumns * chunkRows);
+	}
+
+
+	protected abstract T createChunk();
+
+
+	public int getChunkColumnCount()
+	{
+		return chunkColumns;
+	}
+
+
+	public int getChunkRowCount()
+	{
+		return chunkRows;
+	}
+
+
+	public int getChunkIndex(int row, int column)
+	{
+		return (row >> CHUNK_SHIFT) * chunkColumns + (column >> CHUNK_SHIFT);
+	}
+
+
+	/**
+	 * @return The index of the cell within its chunk.
+	 */
+	public int getLocalIndex(int row, int column)
+	{
+		return ((row & CHUNK_MASK) << CHUNK_SHIFT) | (column & CHUNK_MASK);
+	}
+
+
+	/**
+	 * @return The chunk, or <code>null</code> if it has not been allocated.
+	 */
+	public T get(int chunkIndex)
+	{
+		return chunks.get(chunkIndex);
+	}
+
+
+	/**
+	 * @return The chunk, which is allocated if needed. The chunk is marked active.
+	 */
+	public T getOrCreate(int chunkIndex)
+	{
+		T chunk = chunks.get(chunkIndex);
+
+		if (chunk == null)
+		{
+			T created = createChunk();
+			if (chunks.compareAndSet(chunkIndex, null, created))
+				chunk = created;
+			else
+				chunk = chunks.get(chunkIndex);
+		}
+
+		chunk.markActive();
+		return chunk;
+	}
+
+
+	/**
+	 * Updates the sleep state of all chunks and releases empty chunks that have
+	 * been asleep long enough. Must not be called while tiles are being updated.
+	 */
+	public void endTick()
+	{
+		allocatedChunks = 0;
+		awakeChunks = 0;
+
+		for (int i = 0; i < chunks.length(); i++)
+		{
+			Chunk chunk = chunks.get(i);
+			if (chunk == null)
+				continue;
+
+			if (chunk.active)
+			{
+				chunk.active = false;
+				chunk.idleTicks = 0;
+			}
+			else if (chunk.idleTicks < RELEASE_TICKS)
+			{
+				chunk.idleTicks++;
+			}
+			else if (chunk.isEmpty())
+			{
+				chunks.set(i, null);
+				continue;
+			}
+
+			allocatedChunks++;
+			if (chunk.isAwake())
+				awakeChunks++;
+		}
+	}
+
+
+	/**
+	 * @return The number of allocated chunks, as counted at the end of the last tick.
+	 */
+	public int getAllocatedChunkCount()
+	{
+		return allocatedChunks;
+	}
+
+
+	/**
+	 * @return The number of awake chunks, as counted at the end of the last tick.
+	 */
+	public int getAwakeChunkCount()
+	{
+		return awakeChunks;
+	}
+
+
+	public int getChunkCount()
+	{
+		return chunks.length();
+	}
+}
@@ -1,76 +1,870 @@
 package komposten.automata.backend;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
+import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.graphics.PerspectiveCamera;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.TimeUtils;
 
 import komposten.automata.Automaton;
+import komposten.automata.backend.Metrics.Phase;
+import komposten.automata.life.GameOfLife;
+import komposten.automata.life.HashLife;
+import komposten.automata.playback.Playback;
 import komposten.automata.predatorprey.PixPredatorPrey;
 import komposten.automata.predatorprey.PredatorPrey;
 import komposten.automata.simpleevolution.SimpleEvolution;
 
 public class Engine implements Disposable
 {
-	private List<Automaton> automatas;
+	public static final int MAX_TICKS_PER_FRAME = 1024;
+	/** The directory for checkpoints, relative to the user's home directory. */
+	public static final String CHECKPOINT_DIRECTORY = "CellularAutomata/checkpoints";
+	/** The directory for recordings, relative to the user's home directory. */
+	public static final String RECORDING_DIRECTORY = "CellularAutomata/recordings";
+	/** The directory for exported populations, relative to the user's home directory. */
+	public static final String POPULATION_DIRECTORY = "CellularAutomata/populations";
+	/**
+	 * The directory for the state of evicted automata, relative to the user's home
+	 * directory.
+	 */
+	public static final String EVICTED_DIRECTORY = "CellularAutomata/evicted";
+	/** The default memory budget, as a fraction of the maximum heap size. */
+	public static final float DEFAULT_MEMORY_BUDGET = 0.5f;
+	
+	private List<AutomatonSlot> slots;
+	private int width;
+	private int height;
+	private OrthographicCamera orthographicCamera;
 	
 	private boolean paused;
 	private int automataIndex;
+	private long selections;
+	private int threads;
+	
+	private long memoryBudget;
+	private ExecutorService loader;
+	
+	private int ticksPerFrame = 1;
+	private long frameBudget;
+	
+	private long measureStart;
+	private int measuredTicks;
+	private float ticksPerSecond;
+	
+	private Checkpoint checkpoint;
+	private Future<Path> pendingSave;
+	private Recorder recorder;
+	private PopulationExporter exporter;
+	private Automaton exportedAutomata;
 	
 	
 	public Engine(int width, int height, OrthographicCamera orthographicCamera, PerspectiveCamera perspectiveCamera)
 	{
-		automatas = new ArrayList<>();
-		System.out.println("Creating PredatorPrey...");
-		automatas.add(new PredatorPrey(width, height, orthographicCamera));
-		System.out.println("Creating PixPredatorPrey...");
-		automatas.add(new PixPredatorPrey(width, height, orthographicCamera));
-		System.out.println("Creating SimpleEvolution...");
-		automatas.add(new SimpleEvolution(width, height, orthographicCamera));
+		this(width, height, 0, 0, orthographicCamera, perspectiveCamera);
 	}
 	
 	
+	/**
+	 * Only the first automaton is created right away. The others are created when
+	 * they are first selected, or in the background if
+	 * {@link #setPrewarming(boolean) pre-warming} is enabled.
+	 * 
+	 * @param width The width of the screen.
+	 * @param height The height of the screen.
+	 * @param columns The number of columns in the grids, or 0 to fit the width of
+	 *          the screen.
+	 * @param rows The number of rows in the grids, or 0 to fit the height of the
+	 *          screen.
+	 */
+	public Engine(final int width, final int height, final int columns, final int rows,
+			final OrthographicCamera orthographicCamera, PerspectiveCamera perspectiveCamera)
+	{
+		this.width = width;
+		this.height = height;
+		this.orthographicCamera = orthographicCamera;
+		slots = new ArrayList<>();
+		checkpoint = new Checkpoint();
+		memoryBudget = (long) (Runtime.getRuntime().maxMemory() * DEFAULT_MEMORY_BUDGET);
+		PredatorPrey.initialiseStateShader();
+		
+		slots.add(new AutomatonSlot(new AutomatonSlot.Factory()
+		{
+			@Override
+			public Automaton create()
+			{
+				System.out.println("Creating PredatorPrey...");
+				return new PredatorPrey(getGridSize(columns, width, PredatorPrey.CELL_SIZE),
+						getGridSize(rows, height, PredatorPrey.CELL_SIZE), width, height, orthographicCamera);
+			}
+		}));
+		slots.add(new AutomatonSlot(new AutomatonSlot.Factory()
+		{
+			@Override
+			public Automaton create()
+			{
+				System.out.println("Creating PixPredatorPrey...");
+				return new PixPredatorPrey(getGridSize(columns, width, PixPredatorPrey.CELL_SIZE),
+						getGridSize(rows, height, PixPredatorPrey.CELL_SIZE), width, height, orthographicCamera);
+			}
+		}));
+		slots.add(new AutomatonSlot(new AutomatonSlot.Factory()
+		{
+			@Override
+			public Automaton create()
+			{
+				System.out.println("Creating SimpleEvolution...");
+				return new SimpleEvolution(getGridSize(columns, width, SimpleEvolution.CELL_SIZE),
+						getGridSize(rows, height, SimpleEvolution.CELL_SIZE), width, height, orthographicCamera);
+			}
+		}));
+		slots.add(new AutomatonSlot(new AutomatonSlot.Factory()
+		{
+			@Override
+			public Automaton create()
+			{
+				System.out.println("Creating GameOfLife...");
+				return new GameOfLife(getGridSize(columns, width, GameOfLife.CELL_SIZE),
+						getGridSize(rows, height, GameOfLife.CELL_SIZE), width, height, orthographicCamera);
+			}
+		}));
+		slots.add(new AutomatonSlot(new AutomatonSlot.Factory()
+		{
+			@Override
+			public Automaton create()
+			{
+				System.out.println("Creating HashLife...");
+				return new HashLife(getGridSize(columns, width, HashLife.CELL_SIZE),
+						getGridSize(rows, height, HashLife.CELL_SIZE), width, height, orthographicCamera);
+			}
+		}));
+		
+		setAutomataIndex(0);
+	}
+	
+	
+	private int getGridSize(int cells, int screenSize, int cellSize)
+	{
+		return (cells > 0 ? cells : screenSize / cellSize);
+	}
+	
+	
+	/**
+	 * @return The automaton of the slot, which is created (and restored, if it was
+	 *         evicted) if needed.
+	 */
+	private Automaton getAutomaton(AutomatonSlot slot)
+	{
+		if (slot.create())
+			prepare(slot);
+		return slot.getAutomaton();
+	}
+	
+	
+	/**
+	 * Applies the thread count to a newly created automaton, and restores the state it
+	 * had when it was evicted.
+	 */
+	private void prepare(AutomatonSlot slot)
+	{
+		Automaton automata = slot.getAutomaton();
+		applyThreadCount(automata);
+		
+		Path file = slot.getEvictedState();
+		if (file == null)
+			return;
+		
+		try
+		{
+			checkpoint.restore(automata.getSimulation(), file);
+			Files.deleteIfExists(file);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not restore " + automata.getName() + " after it was evicted: " + e.getMessage());
+		}
+		
+		slot.clearEvictedState();
+	}
+	
+	
+	/**
+	 * Advances the current automaton by {@link #getTicksPerFrame()} ticks, or by as
+	 * many ticks as fit in the frame budget if one is set. The automata only rebuild
+	 * their meshes and textures in {@link #render()}, so the intermediate ticks are
+	 * never drawn.
+	 */
 	public void update()
 	{
+		long start = TimeUtils.nanoTime();
+		
 		if (!paused)
 		{
-			automatas.get(automataIndex).update();
+			Automaton automata = getCurrentAutomata();
+			
+			if (frameBudget > 0)
+			{
+				do
+				{
+					tick(automata);
+				}
+				while (TimeUtils.nanoTime() - start < frameBudget);
+			}
+			else
+			{
+				for (int i = 0; i < ticksPerFrame; i++)
+					tick(automata);
+			}
+		}
+		
+		if (recorder != null)
+			recorder.restoreChangedCells();
+		
+		updateTicksPerSecond();
+		pollCheckpoint();
+		pollPrewarm();
+	}
+	
+	
+	private void tick(Automaton automata)
+	{
+		Metrics metrics = automata.getMetrics();
+		metrics.begin(Phase.Simulation);
+		automata.update();
+		metrics.end(Phase.Simulation);
+		measuredTicks++;
+		
+		if (recorder != null && recorder.getAutomaton() == automata)
+			record();
+	}
+	
+	
+	private void updateTicksPerSecond()
+	{
+		long now = TimeUtils.nanoTime();
+		
+		if (measureStart == 0)
+		{
+			measureStart = now;
+		}
+		else if (now - measureStart >= 1E9)
+		{
+			ticksPerSecond = (float) (measuredTicks / ((now - measureStart) / 1E9));
+			measuredTicks = 0;
+			measureStart = now;
 		}
 	}
 	
 	
 	public void render()
 	{
-		automatas.get(automataIndex).render();
+		getCurrentAutomata().render();
 	}
 	
 	
 	public void renderText(BitmapFont font, SpriteBatch batch)
 	{
-		automatas.get(automataIndex).renderText(font, batch);
+		getCurrentAutomata().renderText(font, batch);
 	}
 	
 	
 	public Automaton getCurrentAutomata()
 	{
-		return automatas.get(automataIndex);
+		return getAutomaton(slots.get(automataIndex));
 	}
 	
+	/**
+	 * Switches to another automaton, creating it first if it has not been created
+	 * yet or has been evicted.
+	 */
 	public void setAutomataIndex(int automataIndex)
 	{
 		this.automataIndex = automataIndex;
 		
-		if (automataIndex >= automatas.size())
+		if (automataIndex >= slots.size())
+		{
+			this.automataIndex = slots.size() - 1;
+		}
+		
+		AutomatonSlot slot = slots.get(this.automataIndex);
+		getAutomaton(slot);
+		slot.setLastSelected(++selections);
+		slot.setEvictionFailed(false);
+		enforceMemoryBudget();
+		prewarm();
+	}
+	
+	
+	/**
+	 * @return The number of automata that can be selected.
+	 */
+	public int getAutomataCount()
+	{
+		return slots.size();
+	}
+	
+	
+	/**
+	 * @return The number of automata that have been created and not evicted.
+	 */
+	public int getCreatedAutomataCount()
+	{
+		int count = 0;
+		for (AutomatonSlot slot : slots)
+		{
+			if (slot.isCreated())
+				count++;
+		}
+		return count;
+	}
+	
+	
+	public void setThreadCount(int threads)
+	{
+		this.threads = threads;
+		
+		for (AutomatonSlot slot : slots)
 		{
-			this.automataIndex = automatas.size() - 1;
+			if (slot.isCreated())
+				applyThreadCount(slot.getAutomaton());
 		}
 	}
 	
 	
+	private void applyThreadCount(Automaton automata)
+	{
+		if (threads > 0 && automata.getSimulation() instanceof TiledSimulation)
+		{
+			((TiledSimulation) automata.getSimulation()).setThreadCount(threads);
+		}
+	}
+	
+	
+	/**
+	 * Enables or disables pre-warming, i.e. creating the automaton after the current
+	 * one on a background thread, so that it is ready by the time it is selected.
+	 * Only automata that have never been created are pre-warmed, and only while the
+	 * memory budget has room left.
+	 */
+	public void setPrewarming(boolean prewarming)
+	{
+		if (prewarming && loader == null)
+		{
+			loader = Executors.newSingleThreadExecutor(new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable runnable)
+				{
+					Thread thread = new Thread(runnable, "Automaton loader");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			prewarm();
+		}
+		else if (!prewarming && loader != null)
+		{
+			loader.shutdown();
+			loader = null;
+		}
+	}
+	
+	
+	public boolean isPrewarming()
+	{
+		return loader != null;
+	}
+	
+	
+	private void prewarm()
+	{
+		if (loader == null)
+			return;
+		
+		AutomatonSlot next = slots.get((automataIndex + 1) % slots.size());
+		if (next.isPrewarmable() && getMemoryUsage() < memoryBudget)
+			next.prewarm(loader);
+	}
+	
+	
+	private void pollPrewarm()
+	{
+		boolean prewarmed = false;
+		for (AutomatonSlot slot : slots)
+		{
+			if (slot.pollPrewarm())
+			{
+				prepare(slot);
+				prewarmed = true;
+				System.out.println("Pre-warmed " + slot.getAutomaton().getName() + ".");
+			}
+		}
+		
+		if (prewarmed)
+			enforceMemoryBudget();
+	}
+	
+	
+	/**
+	 * Sets how much memory the automata may use, as estimated by
+	 * {@link Automaton#getMemoryEstimate()}. When they use more, the automata that
+	 * have not been shown for the longest time release their meshes and textures,
+	 * and are then evicted. The current automaton, and automata that are being
+	 * recorded or exported, are never evicted.
+	 * 
+	 * @param bytes The budget, in bytes.
+	 */
+	public void setMemoryBudget(long bytes)
+	{
+		memoryBudget = Math.max(0, bytes);
+		enforceMemoryBudget();
+	}
+	
+	
+	public long getMemoryBudget()
+	{
+		return memoryBudget;
+	}
+	
+	
+	/**
+	 * @return The estimated memory used by the automata that have been created, in
+	 *         bytes.
+	 */
+	public long getMemoryUsage()
+	{
+		long usage = 0;
+		for (AutomatonSlot slot : slots)
+		{
+			if (slot.isCreated())
+				usage += slot.getAutomaton().getMemoryEstimate();
+		}
+		return usage;
+	}
+	
+	
+	/**
+	 * Releases render resources and evicts automata until the automata are within
+	 * the memory budget, or nothing more can be freed. Only called when the usage can
+	 * have grown or the budget shrunk (when an automaton is selected, created or
+	 * pre-warmed, or the budget is changed) rather than every frame, since it
+	 * estimates the memory of every automaton.
+	 */
+	private void enforceMemoryBudget()
+	{
+		long usage = getMemoryUsage();
+		if (usage <= memoryBudget)
+			return;
+		
+		List<AutomatonSlot> candidates = getInactiveSlots();
+		
+		for (AutomatonSlot slot : candidates)
+		{
+			Automaton automata = slot.getAutomaton();
+			if (!automata.hasRenderResources())
+				continue;
+			
+			long estimate = automata.getMemoryEstimate();
+			automata.releaseRenderResources();
+			usage -= estimate - automata.getMemoryEstimate();
+			
+			if (usage <= memoryBudget)
+				return;
+		}
+		
+		for (AutomatonSlot slot : candidates)
+		{
+			Automaton automata = slot.getAutomaton();
+			if (!slot.isEvictable() || automata == exportedAutomata || (recorder != null && recorder.getAutomaton() == automata))
+				continue;
+			
+			long estimate = automata.getMemoryEstimate();
+			if (evict(slot))
+				usage -= estimate;
+			
+			if (usage <= memoryBudget)
+				return;
+		}
+	}
+	
+	
+	/**
+	 * @return The slots with created automata other than the current one, with the
+	 *         ones that were selected the longest time ago first.
+	 */
+	private List<AutomatonSlot> getInactiveSlots()
+	{
+		List<AutomatonSlot> inactive = new ArrayList<>();
+		for (int i = 0; i < slots.size(); i++)
+		{
+			if (i != automataIndex && slots.get(i).isCreated())
+				inactive.add(slots.get(i));
+		}
+		
+		Collections.sort(inactive, new Comparator<AutomatonSlot>()
+		{
+			@Override
+			public int compare(AutomatonSlot slot1, AutomatonSlot slot2)
+			{
+				return Long.compare(slot1.getLastSelected(), slot2.getLastSelected());
+			}
+		});
+		
+		return inactive;
+	}
+	
+	
+	/**
+	 * Saves the state of the slot's automaton to
+	 * <code>~/{@value #EVICTED_DIRECTORY}/&lt;automaton name&gt;.ckpt</code>, waits
+	 * for the save to finish and disposes it. If the save fails the automaton is
+	 * kept, and is not evicted again until it has been selected.
+	 * 
+	 * @return <code>true</code> if the automaton was evicted.
+	 */
+	private boolean evict(AutomatonSlot slot)
+	{
+		Automaton automata = slot.getAutomaton();
+		Path file = Gdx.files.external(EVICTED_DIRECTORY + "/" + automata.getName() + ".ckpt").file().toPath();
+		
+		try
+		{
+			checkpoint.save(automata.getSimulation(), file).get();
+		}
+		catch (ExecutionException e)
+		{
+			System.err.println("Could not evict " + automata.getName() + ": " + e.getCause().getMessage());
+			slot.setEvictionFailed(true);
+			return false;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			slot.setEvictionFailed(true);
+			return false;
+		}
+		
+		slot.evict(file);
+		System.out.println("Evicted " + automata.getName() + " to stay within the memory budget.");
+		return true;
+	}
+	
+	
+	/**
+	 * Sets how many ticks to run each frame when no frame budget is set.
+	 */
+	public void setTicksPerFrame(int ticksPerFrame)
+	{
+		this.ticksPerFrame = Math.max(1, Math.min(ticksPerFrame, MAX_TICKS_PER_FRAME));
+	}
+	
+	
+	public int getTicksPerFrame()
+	{
+		return ticksPerFrame;
+	}
+	
+	
+	/**
+	 * Sets how long to keep running ticks each frame. At least one tick is always run.
+	 * 
+	 * @param milliseconds The time budget, or 0 to run a fixed number of ticks per
+	 *          frame instead.
+	 */
+	public void setFrameBudget(float milliseconds)
+	{
+		frameBudget = (long) (Math.max(0, milliseconds) * 1E6);
+	}
+	
+	
+	public float getFrameBudget()
+	{
+		return frameBudget / 1E6f;
+	}
+	
+	
+	/**
+	 * @return The number of ticks run per second, measured over the last second.
+	 */
+	public float getTicksPerSecond()
+	{
+		return ticksPerSecond;
+	}
+	
+	
+	/**
+	 * Saves the state of the current automaton to
+	 * <code>~/{@value #CHECKPOINT_DIRECTORY}/&lt;automaton name&gt;.ckpt</code>. The
+	 * state is copied right away and written in the background.
+	 */
+	public void saveCheckpoint()
+	{
+		if (isSavingCheckpoint())
+		{
+			System.out.println("A checkpoint is already being saved!");
+			return;
+		}
+		
+		Automaton automata = getCurrentAutomata();
+		pendingSave = checkpoint.save(automata.getSimulation(), getCheckpointPath(automata));
+	}
+	
+	
+	/**
+	 * Restores the current automaton from its checkpoint, if there is one.
+	 */
+	public void restoreCheckpoint()
+	{
+		Automaton automata = getCurrentAutomata();
+		Path file = getCheckpointPath(automata);
+		
+		try
+		{
+			checkpoint.restore(automata.getSimulation(), file);
+			if (recorder != null && recorder.getAutomaton() == automata)
+				stopRecording();
+			System.out.println("Restored " + automata.getName() + " from " + file + " (tick " + automata.getSimulation().getTicks() + ").");
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not restore " + automata.getName() + " from " + file + ": " + e.getMessage());
+		}
+		
+		pollCheckpoint();
+	}
+	
+	
+	private Path getCheckpointPath(Automaton automata)
+	{
+		return Gdx.files.external(CHECKPOINT_DIRECTORY + "/" + automata.getName() + ".ckpt").file().toPath();
+	}
+	
+	
+	public boolean isSavingCheckpoint()
+	{
+		return pendingSave != null && !pendingSave.isDone();
+	}
+	
+	
+	private void pollCheckpoint()
+	{
+		if (pendingSave == null || !pendingSave.isDone())
+			return;
+		
+		try
+		{
+			System.out.println("Saved a checkpoint to " + pendingSave.get() + ".");
+		}
+		catch (ExecutionException e)
+		{
+			System.err.println("Could not save the checkpoint: " + e.getCause());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		
+		pendingSave = null;
+	}
+	
+	
+	/**
+	 * Starts recording the current automaton to
+	 * <code>~/{@value #RECORDING_DIRECTORY}/&lt;automaton name&gt;.rec</code>, or
+	 * stops the recording in progress. Only one automaton is recorded at a time.
+	 */
+	public void toggleRecording()
+	{
+		if (recorder != null)
+		{
+			stopRecording();
+			return;
+		}
+		
+		Automaton automata = getCurrentAutomata();
+		if (automata.getStateShader() == null || automata instanceof Playback)
+		{
+			System.out.println(automata.getName() + " cannot be recorded!");
+			return;
+		}
+		
+		Path file = getRecordingPath(automata.getName());
+		
+		try
+		{
+			recorder = new Recorder(automata, file);
+			record();
+			if (recorder != null)
+				recorder.restoreChangedCells();
+			System.out.println("Recording " + automata.getName() + " to " + file + "...");
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not start recording to " + file + ": " + e.getMessage());
+		}
+	}
+	
+	
+	private void record()
+	{
+		try
+		{
+			recorder.record();
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not record " + recorder.getAutomaton().getName() + ": " + e.getMessage());
+			stopRecording();
+		}
+	}
+	
+	
+	private void stopRecording()
+	{
+		if (recorder == null)
+			return;
+		
+		try
+		{
+			recorder.close();
+			System.out.println("Stopped recording " + recorder.getAutomaton().getName() + ".");
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not finish the recording: " + e.getMessage());
+		}
+		
+		recorder = null;
+	}
+	
+	
+	public boolean isRecording()
+	{
+		return recorder != null;
+	}
+	
+	
+	/**
+	 * Opens the recording of the current automaton (or, if a playback is shown, of
+	 * the automaton it is playing back) and switches to a {@link Playback} of it.
+	 * A recording in progress is finished first.
+	 */
+	public void loadRecording()
+	{
+		Automaton current = getCurrentAutomata();
+		String name = (current instanceof Playback ? ((Playback) current).getSimulation().getRecording().getName() : current.getName());
+		Path file = getRecordingPath(name);
+		
+		if (recorder != null && recorder.getAutomaton().getName().equals(name))
+			stopRecording();
+		
+		Playback playback;
+		try
+		{
+			playback = new Playback(new Recording(file), width, height, orthographicCamera);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not load the recording " + file + ": " + e.getMessage());
+			return;
+		}
+		
+		for (int i = 0; i < slots.size(); i++)
+		{
+			Automaton automata = slots.get(i).getAutomaton();
+			if (automata instanceof Playback)
+			{
+				if (exportedAutomata == automata)
+					stopExport();
+				slots.remove(i).dispose();
+				break;
+			}
+		}
+		
+		slots.add(new AutomatonSlot(playback));
+		setAutomataIndex(slots.size() - 1);
+		System.out.println("Playing back " + file + ".");
+	}
+	
+	
+	private Path getRecordingPath(String automatonName)
+	{
+		return Gdx.files.external(RECORDING_DIRECTORY + "/" + automatonName + ".rec").file().toPath();
+	}
+	
+	
+	/**
+	 * Starts streaming the populations of the current automaton to
+	 * <code>~/{@value #POPULATION_DIRECTORY}/&lt;automaton name&gt;.csv</code>, or
+	 * stops the export in progress. The export starts with the ticks that are still
+	 * in the automaton's {@link PopulationHistory}.
+	 */
+	public void toggleExport()
+	{
+		if (exporter != null)
+		{
+			stopExport();
+			return;
+		}
+		
+		Automaton automata = getCurrentAutomata();
+		Path file = Gdx.files.external(POPULATION_DIRECTORY + "/" + automata.getName() + ".csv").file().toPath();
+		
+		try
+		{
+			exporter = new PopulationExporter(automata.getSimulation(), file, PopulationExporter.Format.CSV);
+			exportedAutomata = automata;
+			System.out.println("Exporting the populations of " + automata.getName() + " to " + file + "...");
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not export the populations to " + file + ": " + e.getMessage());
+		}
+	}
+	
+	
+	private void stopExport()
+	{
+		if (exporter == null)
+			return;
+		
+		try
+		{
+			exporter.close();
+			System.out.println("Stopped exporting the populations of " + exportedAutomata.getName() + " ("
+					+ exporter.getSkippedEntries() + " ticks skipped).");
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not finish the population export: " + e.getMessage());
+		}
+		
+		exporter = null;
+		exportedAutomata = null;
+	}
+	
+	
+	public boolean isExporting()
+	{
+		return exporter != null;
+	}
+	
+	
 	public void togglePaused()
 	{
 		paused = !paused;
@@ -80,9 +874,30 @@ public class Engine implements Disposable
 	@Override
 	public void dispose()
 	{
-		for (Automaton automata : automatas)
+		stopRecording();
+		stopExport();
+		setPrewarming(false);
+		
+		for (AutomatonSlot slot : slots)
+		{
+			slot.dispose();
+		}
+		
+		checkpoint.dispose();
+		
+		for (AutomatonSlot slot : slots)
 		{
-			automata.dispose();
+			if (slot.getEvictedState() != null)
+			{
+				try
+				{
+					Files.deleteIfExists(slot.getEvictedState());
+				}
+				catch (IOException e)
+				{
+					System.err.println("Could not delete " + slot.getEvictedState() + ": " + e.getMessage());
+				}
+			}
 		}
 	}
 }
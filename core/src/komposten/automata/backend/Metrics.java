@@ -0,0 +1,174 @@
+package komposten.automata.backend;
+
+import com.badlogic.gdx.utils.TimeUtils;
+
+/**
+ * Timings and counters for one automaton. Each value keeps a rolling window of
+ * the last {@link #SAMPLES} samples, so that percentiles can be read while the
+ * automaton is running.
+ * <p>
+ * Metrics are only meant to be recorded and read from the rendering thread.
+ */
+public class Metrics
+{
+	public static final int SAMPLES = 300;
+
+	public enum Phase
+	{
+		/** One tick of the simulation. */
+		Simulation,
+		/** Writing the changed cells into the mesh, pixmap or state texture. */
+		Rebuild,
+		/** Uploading the changed parts of the mesh or texture to the GPU. */
+		Upload,
+		/** Issuing the draw calls. */
+		Draw;
+	}
+
+
+	/**
+	 * Memoization caches of automata that have them.
+	 */
+	public enum Cache
+	{
+		/** Looking up a canonical node instead of creating a new one. */
+		Nodes,
+		/** Looking up a memoized result instead of computing it. */
+		Results;
+	}
+
+
+	private String name;
+	private RollingStatistic[] timings;
+	private long[] phaseStarts;
+	private RollingStatistic changedCells;
+	private RollingStatistic uploadedBytes;
+	private RollingStatistic[] cacheHits;
+	private RollingStatistic[] cacheLookups;
+
+
+	Metrics(String name)
+	{
+		this.name = name;
+
+		Phase[] phases = Phase.values();
+		timings = new RollingStatistic[phases.length];
+		phaseStarts = new long[phases.length];
+		for (int i = 0; i < phases.length; i++)
+			timings[i] = new RollingStatistic(SAMPLES);
+
+		changedCells = new RollingStatistic(SAMPLES);
+		uploadedBytes = new RollingStatistic(SAMPLES);
+
+		Cache[] caches = Cache.values();
+		cacheHits = new RollingStatistic[caches.length];
+		cacheLookups = new RollingStatistic[caches.length];
+		for (int i = 0; i < caches.length; i++)
+		{
+			cacheHits[i] = new RollingStatistic(SAMPLES);
+			cacheLookups[i] = new RollingStatistic(SAMPLES);
+		}
+	}
+
+
+	public String getName()
+	{
+		return name;
+	}
+
+
+	public void begin(Phase phase)
+	{
+		phaseStarts[phase.ordinal()] = TimeUtils.nanoTime();
+	}
+
+
+	/**
+	 * Records the time since {@link #begin(Phase)} was called for the same phase.
+	 */
+	public void end(Phase phase)
+	{
+		record(phase, TimeUtils.nanoTime() - phaseStarts[phase.ordinal()]);
+	}
+
+
+	public void record(Phase phase, long nanoseconds)
+	{
+		timings[phase.ordinal()].add(nanoseconds);
+	}
+
+
+	/**
+	 * Records the number of cells that changed since the automaton was last
+	 * rendered. This is the number of cells changed per tick unless the engine is
+	 * fast-forwarding.
+	 */
+	public void recordChangedCells(int cells)
+	{
+		changedCells.add(cells);
+	}
+
+
+	public void recordUploadedBytes(long bytes)
+	{
+		uploadedBytes.add(bytes);
+	}
+
+
+	/**
+	 * Records the lookups in a cache during one tick.
+	 */
+	public void recordCacheLookups(Cache cache, long hits, long lookups)
+	{
+		cacheHits[cache.ordinal()].add(hits);
+		cacheLookups[cache.ordinal()].add(lookups);
+	}
+
+
+	/**
+	 * @return The duration of the phase in nanoseconds.
+	 */
+	public RollingStatistic getTimings(Phase phase)
+	{
+		return timings[phase.ordinal()];
+	}
+
+
+	public RollingStatistic getChangedCells()
+	{
+		return changedCells;
+	}
+
+
+	public RollingStatistic getUploadedBytes()
+	{
+		return uploadedBytes;
+	}
+
+
+	/**
+	 * @return The fraction of the lookups in the cache that were hits, over the
+	 *         recorded ticks, or <code>-1</code> if there were no lookups.
+	 */
+	public double getCacheHitRate(Cache cache)
+	{
+		double lookups = cacheLookups[cache.ordinal()].getMean();
+		if (lookups == 0)
+			return -1;
+		return cacheHits[cache.ordinal()].getMean() / lookups;
+	}
+
+
+	public void clear()
+	{
+		for (RollingStatistic timing : timings)
+			timing.clear();
+		changedCells.clear();
+		uploadedBytes.clear();
+		for (int i = 0; i < cacheHits.length; i++)
+		{
+			cacheHits[i].clear();
+			cacheLookups[i].clear();
+		}
+	}
+}
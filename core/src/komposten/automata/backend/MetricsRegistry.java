@@ -0,0 +1,45 @@
+package komposten.automata.backend;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the {@link Metrics} of each automaton, by name.
+ */
+public class MetricsRegistry
+{
+	private static Map<String, Metrics> metrics = new LinkedHashMap<>();
+
+
+	/**
+	 * @return The metrics for the specified automaton. The metrics are created the
+	 *         first time they are requested.
+	 */
+	public static synchronized Metrics get(String name)
+	{
+		Metrics result = metrics.get(name);
+
+		if (result == null)
+		{
+			result = new Metrics(name);
+			metrics.put(name, result);
+		}
+
+		return result;
+	}
+
+
+	public static synchronized List<Metrics> getAll()
+	{
+		return new ArrayList<>(metrics.values());
+	}
+
+
+	public static synchronized void clear()
+	{
+		for (Metrics value : metrics.values())
+			value.clear();
+	}
+}
@@ -0,0 +1,248 @@
+package komposten.automata.backend;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams the {@link PopulationHistory} of a simulation to a file. The history is
+ * drained on a background thread every {@link #FLUSH_INTERVAL} milliseconds, so
+ * the thread that updates the simulation never waits for the file. If the writer
+ * falls more than the capacity of the history behind, the oldest entries are
+ * skipped and counted by {@link #getSkippedEntries()}.
+ * <p>
+ * The export starts with the oldest entry still in the history. In the
+ * {@link Format#CSV CSV} format the first line holds the column names
+ * (<code>tick</code> followed by the population names). The
+ * {@link Format#BINARY binary} format is (big-endian, strings as a short length
+ * followed by UTF-8):
+ * <pre>
+ * int     magic ("CPOP")
+ * int     version
+ * short   number of populations, followed by their names as strings
+ * entries until the end of the file, each a long tick followed by int[] populations
+ * </pre>
+ */
+public class PopulationExporter implements Closeable
+{
+	public static final int MAGIC = 0x43504F50;
+	public static final int VERSION = 1;
+	public static final int FLUSH_INTERVAL = 250;
+	private static final int BATCH_SIZE = 4096;
+
+	public enum Format
+	{
+		CSV,
+		BINARY
+	}
+
+	private PopulationHistory history;
+	private Format format;
+	private FileChannel channel;
+	private ScheduledExecutorService executor;
+	private volatile IOException failure;
+	private volatile long skipped;
+
+	/** Only used by the writer thread, and by close() once it has stopped. */
+	private long nextEntry;
+	private long[] batchTicks;
+	private int[] batchPopulations;
+	private ByteBuffer buffer;
+	private StringBuilder line;
+
+
+	public PopulationExporter(Simulation simulation, Path file, Format format) throws IOException
+	{
+		this.format = format;
+		history = simulation.getPopulationHistory();
+		nextEntry = history.getOldestEntry();
+		batchTicks = new long[BATCH_SIZE];
+		batchPopulations = new int[BATCH_SIZE * history.getPopulationCount()];
+		buffer = ByteBuffer.allocate(BATCH_SIZE * (20 + history.getPopulationCount() * 12));
+		line = new StringBuilder();
+
+		Path directory = file.toAbsolutePath().getParent();
+		if (directory != null)
+			Files.createDirectories(directory);
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+
+		try
+		{
+			writeHeader(simulation.getPopulationNames());
+		}
+		catch (IOException e)
+		{
+			channel.close();
+			throw e;
+		}
+
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "Population exporter");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		executor.scheduleWithFixedDelay(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				flush();
+			}
+		}, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+
+	private void writeHeader(String[] populationNames) throws IOException
+	{
+		buffer.clear();
+
+		if (format == Format.CSV)
+		{
+			line.setLength(0);
+			line.append("tick");
+			for (String name : populationNames)
+				line.append(',').append(name);
+			line.append('\n');
+			putAscii(line);
+		}
+		else
+		{
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putShort((short) populationNames.length);
+			for (String name : populationNames)
+				Recording.putString(buffer, name);
+		}
+
+		writeBuffer();
+	}
+
+
+	/**
+	 * @return The number of entries that were overwritten in the history before
+	 *         they could be exported.
+	 */
+	public long getSkippedEntries()
+	{
+		return skipped;
+	}
+
+
+	private void flush()
+	{
+		if (failure != null)
+			return;
+
+		try
+		{
+			while (writeBatch() > 0);
+		}
+		catch (IOException e)
+		{
+			failure = e;
+		}
+	}
+
+
+	/**
+	 * @return The number of entries written.
+	 */
+	private int writeBatch() throws IOException
+	{
+		long first = Math.max(nextEntry, history.getOldestEntry());
+		int length = (int) Math.min(history.getEntryCount() - first, BATCH_SIZE);
+		if (length <= 0)
+			return 0;
+
+		history.copy(first, length, batchTicks, batchPopulations);
+
+		//Entries that were overwritten while they were copied are skipped.
+		long oldest = history.getOldestEntry();
+		int start = (int) Math.max(0, Math.min(oldest - first, length));
+		skipped += (first - nextEntry) + start;
+		nextEntry = first + length;
+
+		buffer.clear();
+		int populationCount = history.getPopulationCount();
+		for (int i = start; i < length; i++)
+		{
+			if (format == Format.CSV)
+			{
+				line.setLength(0);
+				line.append(batchTicks[i]);
+				for (int p = 0; p < populationCount; p++)
+					line.append(',').append(batchPopulations[i * populationCount + p]);
+				line.append('\n');
+				putAscii(line);
+			}
+			else
+			{
+				buffer.putLong(batchTicks[i]);
+				for (int p = 0; p < populationCount; p++)
+					buffer.putInt(batchPopulations[i * populationCount + p]);
+			}
+		}
+
+		writeBuffer();
+		return length;
+	}
+
+
+	private void putAscii(CharSequence text)
+	{
+		for (int i = 0; i < text.length(); i++)
+			buffer.put((byte) text.charAt(i));
+	}
+
+
+	private void writeBuffer() throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+
+	/**
+	 * Exports the entries recorded so far and closes the file.
+	 *
+	 * @throws IOException If the file could not be written.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		executor.shutdown();
+
+		try
+		{
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+			flush();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			channel.close();
+		}
+
+		if (failure != null)
+			throw failure;
+	}
+}
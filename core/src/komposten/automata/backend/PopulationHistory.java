@@ -0,0 +1,122 @@
+package komposten.automata.backend;
+
+/**
+ * Keeps the populations of the last <code>capacity</code> ticks of a
+ * {@link Simulation} in preallocated primitive ring buffers.
+ * <p>
+ * Entries are numbered from 0 in the order they were recorded. Recording is done
+ * by the thread that updates the simulation and never allocates. Other threads
+ * (such as a {@link PopulationExporter}) can read the entries concurrently, as
+ * long as they only read entries from {@link #getOldestEntry()} onwards and check
+ * it again afterwards, since older entries can be overwritten at any time.
+ */
+public class PopulationHistory
+{
+	/** The default capacity, in ticks. Must be a power of two. */
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	private int populationCount;
+	private int mask;
+	private long[] ticks;
+	private int[] populations;
+	private volatile long count;
+
+
+	/**
+	 * @param capacity The number of ticks to keep. Rounded up to a power of two.
+	 */
+	public PopulationHistory(int populationCount, int capacity)
+	{
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+
+		this.populationCount = populationCount;
+		mask = size - 1;
+		ticks = new long[size];
+		populations = new int[size * populationCount];
+	}
+
+
+	/**
+	 * Records the populations of a tick, overwriting the oldest entry if the history
+	 * is full.
+	 */
+	public void record(long tick, int[] tickPopulations)
+	{
+		long entry = count;
+		int slot = (int) (entry & mask);
+
+		ticks[slot] = tick;
+		System.arraycopy(tickPopulations, 0, populations, slot * populationCount, populationCount);
+		count = entry + 1;
+	}
+
+
+	public int getCapacity()
+	{
+		return ticks.length;
+	}
+
+
+	public int getPopulationCount()
+	{
+		return populationCount;
+	}
+
+
+	/**
+	 * @return The size of the ring buffers, in bytes.
+	 */
+	public long getMemoryEstimate()
+	{
+		return ticks.length * 8L + populations.length * 4L;
+	}
+
+
+	/**
+	 * @return The number of entries that have been recorded, which is also the
+	 *         number of the next entry.
+	 */
+	public long getEntryCount()
+	{
+		return count;
+	}
+
+
+	/**
+	 * @return The oldest entry that is still available. One slot is left as a
+	 *         margin, since the entry after it may be in the middle of being
+	 *         overwritten.
+	 */
+	public long getOldestEntry()
+	{
+		return Math.max(0, count - ticks.length + 1);
+	}
+
+
+	public long getTick(long entry)
+	{
+		return ticks[(int) (entry & mask)];
+	}
+
+
+	public int getPopulation(long entry, int population)
+	{
+		return populations[(int) (entry & mask) * populationCount + population];
+	}
+
+
+	/**
+	 * Copies <code>length</code> consecutive entries, starting at
+	 * <code>first</code>. The populations of each entry are copied after each other
+	 * into <code>entryPopulations</code>.
+	 */
+	public void copy(long first, int length, long[] entryTicks, int[] entryPopulations)
+	{
+		for (int i = 0; i < length; i++)
+		{
+			int slot = (int) ((first + i) & mask);
+			entryTicks[i] = ticks[slot];
+			System.arraycopy(populations, slot * populationCount, entryPopulations, i * populationCount, populationCount);
+		}
+	}
+}
@@ -0,0 +1,352 @@
+package komposten.automata.backend;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import komposten.automata.Automaton;
+
+/**
+ * Records the cells of an automaton that change each tick to a file, in the
+ * format described in {@link Recording}. The cells are recorded as the packed
+ * states that the automaton's state shader colours (see
+ * {@link Automaton#getCellState(int)}), so a recording can be played back
+ * without the rules.
+ * <p>
+ * {@link #record()} takes the cells out of {@link Simulation#getChangedCells()},
+ * so that each tick only visits the cells changed since the previous one, and
+ * encodes the ones that differ from the states recorded so far.
+ * {@link #restoreChangedCells()} marks them as changed again for the view once the
+ * ticks of a frame have been recorded. A keyframe with every cell is recorded every
+ * {@link #KEYFRAME_INTERVAL} frames, so that playback can seek. The frames are
+ * compressed and written on a background thread, and their buffers are reused once
+ * they have been written. If the writer falls more than {@link #QUEUE_SIZE} frames
+ * behind, {@link #record()} waits for it, so that the frames stay in order.
+ */
+public class Recorder implements Closeable
+{
+	public static final int KEYFRAME_INTERVAL = 256;
+	public static final int QUEUE_SIZE = 64;
+	/** The number of written deltas whose buffers are kept for reuse. */
+	private static final int POOLED_DELTAS = 4;
+
+	/**
+	 * A frame that waits to be written.
+	 */
+	private static class Frame
+	{
+		private byte type;
+		private long tick;
+		private int[] populations;
+		private ByteBuffer data = ByteBuffer.allocate(1024);
+
+
+		public Frame(int populationCount)
+		{
+			populations = new int[populationCount];
+		}
+	}
+
+	private Automaton automaton;
+	private Simulation simulation;
+	private FileChannel channel;
+	private ThreadPoolExecutor executor;
+	private volatile IOException failure;
+
+	private int[] states;
+	/** Starts at the interval, so that the first frame is a keyframe. */
+	private int framesSinceKeyframe = KEYFRAME_INTERVAL;
+	/**
+	 * The frames that have been written, to be reused. Keyframes are kept apart,
+	 * so that only one buffer the size of every cell is kept.
+	 */
+	private BlockingQueue<Frame> freeDeltas;
+	private BlockingQueue<Frame> freeKeyframes;
+	/** The runs of cells taken from the changed cells, as pairs of start and end. */
+	private int[] takenRuns;
+	private int takenRunCount;
+
+	/** Only used by the writer thread. */
+	private Deflater deflater;
+	private byte[] compressed;
+
+
+	public Recorder(Automaton automaton, Path file) throws IOException
+	{
+		if (automaton.getStateShader() == null)
+			throw new IllegalArgumentException(automaton.getName() + " does not have packed cell states!");
+
+		this.automaton = automaton;
+		simulation = automaton.getSimulation();
+		states = new int[simulation.getCellCount()];
+		freeDeltas = new ArrayBlockingQueue<>(POOLED_DELTAS);
+		freeKeyframes = new ArrayBlockingQueue<>(1);
+		takenRuns = new int[64];
+		deflater = new Deflater(Deflater.BEST_SPEED);
+		compressed = new byte[1024];
+
+		Path directory = file.toAbsolutePath().getParent();
+		if (directory != null)
+			Files.createDirectories(directory);
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+
+		writeHeader();
+
+		executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_SIZE),
+				new ThreadFactory()
+				{
+					@Override
+					public Thread newThread(Runnable runnable)
+					{
+						Thread thread = new Thread(runnable, "Recording writer");
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, new RejectedExecutionHandler()
+				{
+					@Override
+					public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor)
+					{
+						try
+						{
+							executor.getQueue().put(runnable);
+						}
+						catch (InterruptedException e)
+						{
+							Thread.currentThread().interrupt();
+						}
+					}
+				});
+	}
+
+
+	private void writeHeader() throws IOException
+	{
+		String[] populationNames = simulation.getPopulationNames();
+		ByteBuffer header = ByteBuffer.allocate(64 * 1024);
+		header.putInt(Recording.MAGIC);
+		header.putInt(Recording.VERSION);
+		Recording.putString(header, automaton.getName());
+		Recording.putString(header, automaton.getStateShader());
+		header.putInt(simulation.getColumnCount());
+		header.putInt(simulation.getRowCount());
+		header.putShort((short) populationNames.length);
+		for (String name : populationNames)
+			Recording.putString(header, name);
+		header.flip();
+
+		while (header.hasRemaining())
+			channel.write(header);
+	}
+
+
+	public Automaton getAutomaton()
+	{
+		return automaton;
+	}
+
+
+	/**
+	 * Records the current tick of the simulation. Must be called after each tick,
+	 * before the view clears the changed cells, and be followed by
+	 * {@link #restoreChangedCells()} before they are read by anything else.
+	 *
+	 * @throws IOException If the background writer has failed.
+	 */
+	public void record() throws IOException
+	{
+		if (failure != null)
+			throw failure;
+
+		boolean keyframe = (framesSinceKeyframe >= KEYFRAME_INTERVAL);
+		Frame frame = (keyframe ? freeKeyframes : freeDeltas).poll();
+		if (frame == null)
+			frame = new Frame(simulation.getPopulationNames().length);
+		frame.data.clear();
+
+		if (keyframe)
+		{
+			frame.data = ensureCapacity(frame.data, states.length * 4);
+			for (int i = 0; i < states.length; i++)
+			{
+				states[i] = automaton.getCellState(i);
+				frame.data.putInt(states[i]);
+			}
+
+			framesSinceKeyframe = 0;
+		}
+
+		takeChangedCells(frame, !keyframe);
+		framesSinceKeyframe++;
+
+		frame.type = (keyframe ? Recording.KEYFRAME : Recording.DELTA);
+		frame.tick = simulation.getTicks();
+		for (int i = 0; i < frame.populations.length; i++)
+			frame.populations[i] = simulation.getPopulation(i);
+
+		final Frame queuedFrame = frame;
+		executor.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					if (failure == null)
+						writeFrame(queuedFrame);
+				}
+				catch (IOException e)
+				{
+					failure = e;
+				}
+				finally
+				{
+					(queuedFrame.type == Recording.KEYFRAME ? freeKeyframes : freeDeltas).offer(queuedFrame);
+				}
+			}
+		});
+	}
+
+
+	/**
+	 * Removes the changed cells from the simulation's set, one run at a time, and
+	 * remembers them for {@link #restoreChangedCells()}. If <code>encode</code> is
+	 * <code>true</code>, the cells whose states differ from the recorded ones are
+	 * added to the frame as a delta.
+	 */
+	private void takeChangedCells(Frame frame, boolean encode)
+	{
+		BitSet changedCells = simulation.getChangedCells();
+		int previous = -1;
+		int start = changedCells.nextSetBit(0);
+
+		while (start >= 0)
+		{
+			int end = changedCells.nextClearBit(start);
+
+			if (encode)
+			{
+				for (int i = start; i < end; i++)
+				{
+					int state = automaton.getCellState(i);
+					if (state == states[i])
+						continue;
+
+					frame.data = ensureCapacity(frame.data, 5 + 4);
+					Recording.putVarInt(frame.data, i - previous - 1);
+					frame.data.putInt(state);
+					states[i] = state;
+					previous = i;
+				}
+			}
+
+			changedCells.clear(start, end);
+			if (takenRunCount * 2 == takenRuns.length)
+				takenRuns = Arrays.copyOf(takenRuns, takenRuns.length * 2);
+			takenRuns[takenRunCount * 2] = start;
+			takenRuns[takenRunCount * 2 + 1] = end;
+			takenRunCount++;
+
+			start = changedCells.nextSetBit(end);
+		}
+	}
+
+
+	/**
+	 * Marks the cells that {@link #record()} has taken from the simulation's changed
+	 * cells since the last call as changed again, so that the view redraws them.
+	 */
+	public void restoreChangedCells()
+	{
+		BitSet changedCells = simulation.getChangedCells();
+		for (int i = 0; i < takenRunCount; i++)
+			changedCells.set(takenRuns[i * 2], takenRuns[i * 2 + 1]);
+		takenRunCount = 0;
+	}
+
+
+	private ByteBuffer ensureCapacity(ByteBuffer buffer, int bytes)
+	{
+		if (buffer.remaining() >= bytes)
+			return buffer;
+
+		ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+		buffer.flip();
+		larger.put(buffer);
+		return larger;
+	}
+
+
+	private void writeFrame(Frame frame) throws IOException
+	{
+		int dataSize = frame.data.position();
+		deflater.reset();
+		deflater.setInput(frame.data.array(), 0, dataSize);
+		deflater.finish();
+
+		int size = 0;
+		while (!deflater.finished())
+		{
+			if (size == compressed.length)
+				compressed = Arrays.copyOf(compressed, compressed.length * 2);
+			size += deflater.deflate(compressed, size, compressed.length - size);
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(1 + 8 + frame.populations.length * 4 + 4 + 4);
+		header.put(frame.type);
+		header.putLong(frame.tick);
+		for (int population : frame.populations)
+			header.putInt(population);
+		header.putInt(dataSize);
+		header.putInt(size);
+		header.flip();
+
+		ByteBuffer body = ByteBuffer.wrap(compressed, 0, size);
+		while (header.hasRemaining() || body.hasRemaining())
+			channel.write(new ByteBuffer[] { header, body });
+	}
+
+
+	/**
+	 * Writes the remaining frames and closes the file.
+	 *
+	 * @throws IOException If a frame could not be written.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		restoreChangedCells();
+		executor.shutdown();
+
+		try
+		{
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			deflater.end();
+			channel.close();
+		}
+
+		if (failure != null)
+			throw failure;
+	}
+}
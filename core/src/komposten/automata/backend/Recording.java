@@ -0,0 +1,431 @@
+package komposten.automata.backend;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a recording written by a {@link Recorder}.
+ * <p>
+ * A recording has the following format (big-endian, strings as a short length
+ * followed by UTF-8):
+ * <pre>
+ * int     magic ("CREC")
+ * int     version
+ * string  name of the automaton
+ * string  state shader (see {@link ShaderFactory})
+ * int     columns
+ * int     rows
+ * short   number of populations, followed by their names as strings
+ * frames  until the end of the file
+ * </pre>
+ * Each frame is:
+ * <pre>
+ * byte    type (keyframe or delta)
+ * long    tick
+ * int[]   populations
+ * int     size of the data
+ * int     size of the deflated data
+ * byte[]  the data, deflated
+ * </pre>
+ * The data of a keyframe is the state of every cell, as ints. The data of a delta
+ * is the cells that changed since the previous frame, each as the number of cells
+ * skipped since the previous change (a varint) followed by the new state (an int).
+ * <p>
+ * Opening a recording only reads the frame headers, to index where each frame
+ * starts. A frame can then be found by seeking to the keyframe before it and
+ * applying the deltas that follow.
+ */
+public class Recording implements Closeable
+{
+	public static final int MAGIC = 0x43524543;
+	public static final int VERSION = 1;
+	static final byte KEYFRAME = 0;
+	static final byte DELTA = 1;
+
+	private FileChannel channel;
+	private String name;
+	private String stateShader;
+	private int columns;
+	private int rows;
+	private int cellCount;
+	private String[] populationNames;
+	private int frameHeaderSize;
+
+	private int frameCount;
+	private long[] offsets;
+	private long[] ticks;
+	private BitSet keyframes;
+
+	private Inflater inflater;
+	private byte[] compressed;
+	private byte[] data;
+
+
+	public Recording(Path file) throws IOException
+	{
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+
+		try
+		{
+			readHeader(file);
+			indexFrames();
+		}
+		catch (IOException | RuntimeException e)
+		{
+			channel.close();
+			throw e;
+		}
+
+		inflater = new Inflater();
+		compressed = new byte[0];
+		data = new byte[0];
+	}
+
+
+	private void readHeader(Path file) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(8);
+		readFully(buffer, 0);
+
+		if (buffer.getInt() != MAGIC)
+			throw new IOException(file + " is not a recording!");
+
+		int version = buffer.getInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported recording version: " + version + "!");
+
+		//The header is small, so read a generous part of the file and parse it from there.
+		buffer = ByteBuffer.allocate((int) Math.min(channel.size() - 8, 64 * 1024));
+		readFully(buffer, 8);
+
+		try
+		{
+			name = getString(buffer);
+			stateShader = getString(buffer);
+			columns = buffer.getInt();
+			rows = buffer.getInt();
+			short populationCount = buffer.getShort();
+
+			if (columns <= 0 || rows <= 0 || (long) columns * rows > Integer.MAX_VALUE)
+				throw new IOException("Invalid grid size: " + columns + "x" + rows + "!");
+			if (populationCount < 0)
+				throw new IOException("Invalid number of populations: " + populationCount + "!");
+
+			populationNames = new String[populationCount];
+			for (int i = 0; i < populationNames.length; i++)
+				populationNames[i] = getString(buffer);
+		}
+		catch (BufferUnderflowException e)
+		{
+			throw new IOException("The header of the recording is corrupt!", e);
+		}
+
+		cellCount = columns * rows;
+		offsets = new long[] { 8 + buffer.position() };
+		frameHeaderSize = 1 + 8 + populationNames.length * 4 + 4 + 4;
+	}
+
+
+	private void indexFrames() throws IOException
+	{
+		long position = offsets[0];
+		long size = channel.size();
+		ticks = new long[16];
+		keyframes = new BitSet();
+		ByteBuffer header = ByteBuffer.allocate(frameHeaderSize);
+
+		//A recording that was not closed properly can end with a partial frame, which is ignored.
+		while (position + frameHeaderSize <= size)
+		{
+			header.clear();
+			readFully(header, position);
+
+			byte type = header.get();
+			long tick = header.getLong();
+			header.position(header.position() + populationNames.length * 4);
+			int dataSize = header.getInt();
+			int compressedSize = header.getInt();
+			checkFrame(type, dataSize, compressedSize);
+			long end = position + frameHeaderSize + compressedSize;
+
+			if (end > size)
+				break;
+
+			if (frameCount >= offsets.length)
+				offsets = Arrays.copyOf(offsets, offsets.length * 2);
+			if (frameCount >= ticks.length)
+				ticks = Arrays.copyOf(ticks, ticks.length * 2);
+
+			offsets[frameCount] = position;
+			ticks[frameCount] = tick;
+			keyframes.set(frameCount, type == KEYFRAME);
+			frameCount++;
+			position = end;
+		}
+
+		if (frameCount == 0 || !keyframes.get(0))
+			throw new IOException("The recording does not contain any frames!");
+	}
+
+
+	public String getName()
+	{
+		return name;
+	}
+
+
+	/**
+	 * @return The name of the {@link ShaderFactory} shader that colours the states.
+	 */
+	public String getStateShader()
+	{
+		return stateShader;
+	}
+
+
+	public int getColumnCount()
+	{
+		return columns;
+	}
+
+
+	public int getRowCount()
+	{
+		return rows;
+	}
+
+
+	public String[] getPopulationNames()
+	{
+		return populationNames;
+	}
+
+
+	public int getFrameCount()
+	{
+		return frameCount;
+	}
+
+
+	public long getTick(int frame)
+	{
+		return ticks[frame];
+	}
+
+
+	/**
+	 * @return The last frame with a tick less than or equal to <code>tick</code>,
+	 *         or 0 if the recording starts after it.
+	 */
+	public int getFrame(long tick)
+	{
+		int index = Arrays.binarySearch(ticks, 0, frameCount, tick);
+		return (index >= 0 ? index : Math.max(0, -index - 2));
+	}
+
+
+	/**
+	 * @return The last keyframe at or before <code>frame</code>.
+	 */
+	public int getKeyframe(int frame)
+	{
+		return keyframes.previousSetBit(frame);
+	}
+
+
+	public boolean isKeyframe(int frame)
+	{
+		return keyframes.get(frame);
+	}
+
+
+	/**
+	 * Applies a frame to <code>states</code>. A keyframe replaces all states, and a
+	 * delta only the cells that changed. The cells that are written are marked in
+	 * <code>changedCells</code>.
+	 *
+	 * @param states The states of all <code>columns * rows</code> cells.
+	 * @throws IOException If the frame cannot be read or is corrupt.
+	 */
+	public void readFrame(int frame, int[] states, BitSet changedCells, int[] populations) throws IOException
+	{
+		ByteBuffer header = ByteBuffer.allocate(frameHeaderSize);
+		readFully(header, offsets[frame]);
+
+		byte type = header.get();
+		header.getLong();
+		for (int i = 0; i < populationNames.length; i++)
+			populations[i] = header.getInt();
+		int size = header.getInt();
+		int compressedSize = header.getInt();
+
+		checkFrame(type, size, compressedSize);
+		if (compressedSize > channel.size() - offsets[frame] - frameHeaderSize)
+			throw new IOException("The recording is truncated!");
+
+		if (compressed.length < compressedSize)
+			compressed = new byte[compressedSize];
+		if (data.length < size)
+			data = new byte[size];
+
+		readFully(ByteBuffer.wrap(compressed, 0, compressedSize), offsets[frame] + frameHeaderSize);
+		inflate(compressedSize, size);
+
+		ByteBuffer buffer = ByteBuffer.wrap(data, 0, size);
+		if (type == KEYFRAME)
+		{
+			buffer.asIntBuffer().get(states);
+			changedCells.set(0, states.length);
+		}
+		else
+		{
+			try
+			{
+				int index = -1;
+				while (buffer.hasRemaining())
+				{
+					int skipped = getVarInt(buffer);
+					if (skipped < 0 || skipped >= states.length - index - 1)
+						throw new IOException("A frame in the recording changes a cell outside the grid!");
+
+					index += skipped + 1;
+					states[index] = buffer.getInt();
+					changedCells.set(index);
+				}
+			}
+			catch (BufferUnderflowException | IllegalArgumentException e)
+			{
+				throw new IOException("A frame in the recording is corrupt!", e);
+			}
+		}
+	}
+
+
+	/**
+	 * Checks the sizes in a frame header against the grid, before they are used to
+	 * allocate or read anything. A keyframe holds every cell, and a delta at most
+	 * every cell with the longest varint.
+	 *
+	 * @throws IOException If the frame has an unknown type or invalid sizes.
+	 */
+	private void checkFrame(byte type, int size, int compressedSize) throws IOException
+	{
+		if (type != KEYFRAME && type != DELTA)
+			throw new IOException("Unknown frame type: " + type + "!");
+
+		boolean validSize;
+		if (type == KEYFRAME)
+			validSize = (size == cellCount * 4L);
+		else
+			validSize = (size >= 0 && size <= cellCount * (5 + 4L));
+
+		if (!validSize || compressedSize < 0 || size > (long) compressedSize * Checkpoint.MAX_COMPRESSION_RATIO)
+			throw new IOException("Invalid frame size: " + size + " (" + compressedSize + " deflated)!");
+	}
+
+
+	private void inflate(int compressedSize, int size) throws IOException
+	{
+		inflater.reset();
+		inflater.setInput(compressed, 0, compressedSize);
+
+		try
+		{
+			int inflated = 0;
+			while (inflated < size && !inflater.finished() && !inflater.needsInput() && !inflater.needsDictionary())
+				inflated += inflater.inflate(data, inflated, size - inflated);
+
+			if (inflated != size)
+				throw new IOException("A frame in the recording is corrupt!");
+		}
+		catch (DataFormatException e)
+		{
+			throw new IOException("A frame in the recording is corrupt!", e);
+		}
+	}
+
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			int read = channel.read(buffer, position);
+			if (read < 0)
+				throw new IOException("The recording is truncated!");
+			position += read;
+		}
+
+		buffer.flip();
+	}
+
+
+	@Override
+	public void close() throws IOException
+	{
+		inflater.end();
+		channel.close();
+	}
+
+
+	static void putString(ByteBuffer buffer, String string)
+	{
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		buffer.putShort((short) bytes.length);
+		buffer.put(bytes);
+	}
+
+
+	static String getString(ByteBuffer buffer)
+	{
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+
+	/**
+	 * Writes a non-negative int in 7-bit groups, lowest first, with the high bit set
+	 * on all but the last byte.
+	 */
+	static void putVarInt(ByteBuffer buffer, int value)
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+
+		buffer.put((byte) value);
+	}
+
+
+	static int getVarInt(ByteBuffer buffer)
+	{
+		int value = 0;
+		int shift = 0;
+		byte b;
+
+		do
+		{
+			if (shift > 28)
+				throw new IllegalArgumentException("The varint is longer than an int!");
+
+			b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		}
+		while (b < 0);
+
+		return value;
+	}
+}
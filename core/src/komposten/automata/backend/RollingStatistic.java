@@ -0,0 +1,93 @@
+package komposten.automata.backend;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the last <code>capacity</code> samples of a value in a ring buffer and
+ * calculates percentiles over them.
+ */
+public class RollingStatistic
+{
+	private long[] samples;
+	private long[] sorted;
+	private int count;
+	private int next;
+	private boolean sortedValid;
+
+
+	public RollingStatistic(int capacity)
+	{
+		samples = new long[capacity];
+		sorted = new long[capacity];
+	}
+
+
+	public void add(long sample)
+	{
+		samples[next] = sample;
+		next = (next + 1) % samples.length;
+		if (count < samples.length)
+			count++;
+		sortedValid = false;
+	}
+
+
+	public int getCount()
+	{
+		return count;
+	}
+
+
+	/**
+	 * @return The most recent sample, or 0 if there are no samples.
+	 */
+	public long getLast()
+	{
+		if (count == 0)
+			return 0;
+		return samples[(next - 1 + samples.length) % samples.length];
+	}
+
+
+	public double getMean()
+	{
+		if (count == 0)
+			return 0;
+
+		long sum = 0;
+		for (int i = 0; i < count; i++)
+			sum += samples[i];
+		return sum / (double) count;
+	}
+
+
+	/**
+	 * @param percentile The percentile, between 0 and 100.
+	 * @return The smallest sample that is greater than or equal to
+	 *         <code>percentile</code> percent of the samples, or 0 if there are no
+	 *         samples.
+	 */
+	public long getPercentile(double percentile)
+	{
+		if (count == 0)
+			return 0;
+
+		if (!sortedValid)
+		{
+			System.arraycopy(samples, 0, sorted, 0, count);
+			Arrays.sort(sorted, 0, count);
+			sortedValid = true;
+		}
+
+		int rank = (int) Math.ceil(percentile / 100 * count);
+		return sorted[Math.max(0, Math.min(rank - 1, count - 1))];
+	}
+
+
+	public void clear()
+	{
+		count = 0;
+		next = 0;
+		sortedValid = false;
+	}
+}
@@ -0,0 +1,57 @@
+package komposten.automata.backend;
+
+import komposten.automata.backend.TileScheduler.Worker;
+
+/**
+ * A {@link TiledSimulation} that runs a {@link CellRule}. Each tick visits the
+ * occupied cells of each tile, row by row, picks a random neighbour for each of
+ * them and passes the pair to the rule. Neighbours outside the grid are skipped.
+ */
+public abstract class RuleSimulation extends TiledSimulation implements CellRule
+{
+	/**
+	 * @param reach How far from a cell the rule may read or write. Since the
+	 *          neighbour is adjacent, this is at least 1.
+	 * @param seed The seed for the starting grid and the rule.
+	 */
+	public RuleSimulation(String name, int columns, int rows, int reach, long seed, String... populationNames)
+	{
+		super(name, columns, rows, Math.max(1, reach), seed, populationNames);
+	}
+
+
+	@Override
+	public void updateTile(Worker worker, int firstRow, int endRow, int firstColumn, int endColumn)
+	{
+		int rows = getRowCount();
+		int columns = getColumnCount();
+		int directionBlock = -1;
+		long directions = 0;
+
+		for (int r = firstRow; r < endRow; r++)
+		{
+			int rowStart = r * columns;
+
+			//Cells that move into a later cell in the row are found again, just as they would be by a full scan.
+			for (int c = nextOccupied(r, firstColumn, endColumn); c >= 0; c = nextOccupied(r, c + 1, endColumn))
+			{
+				int index = rowStart + c;
+
+				if (index / CellRandom.DIRECTIONS_PER_VALUE != directionBlock)
+				{
+					directionBlock = index / CellRandom.DIRECTIONS_PER_VALUE;
+					directions = cellRandom.getDirectionBits(index);
+				}
+
+				int direction = CellRandom.getDirection(directions, index);
+				int adjacentR = r + direction / 3 - 1;
+				int adjacentC = c + direction % 3 - 1;
+
+				if (adjacentR < 0 || adjacentR >= rows) continue;
+				if (adjacentC < 0 || adjacentC >= columns) continue;
+
+				updateCell(worker, index, r, c, adjacentR * columns + adjacentC, adjacentR, adjacentC);
+			}
+		}
+	}
+}
@@ -11,6 +11,9 @@ public class ShaderFactory
 {
 	public static final String DEFAULT_COLOR = "default_color";
 	public static final String DEFAULT_TEXTURE = "default_texture";
+	public static final String COMPACT_COLOR = "compact_color";
+	public static final String PREDATORPREY_STATE = "predatorprey_state";
+	public static final String EVOLUTION_STATE = "evolution_state";
 	
 	private static Map<String, ShaderProgram> shaders;
 	
@@ -30,6 +33,9 @@ public class ShaderFactory
 	{
 		createShader(DEFAULT_COLOR, "shaders/default.vert", "shaders/default.frag");
 		createShader(DEFAULT_TEXTURE, "shaders/default_texture.vert", "shaders/default_texture.frag");
+		createShader(COMPACT_COLOR, "shaders/compact.vert", "shaders/compact.frag");
+		createShader(PREDATORPREY_STATE, "shaders/default_texture.vert", "shaders/predatorprey_state.frag");
+		createShader(EVOLUTION_STATE, "shaders/default_texture.vert", "shaders/evolution_state.frag");
 		
 		getShader(DEFAULT_TEXTURE).setUniformi("u_texture", 0);
 	}
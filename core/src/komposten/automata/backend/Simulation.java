@@ -0,0 +1,227 @@
+package komposten.automata.backend;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+import com.badlogic.gdx.utils.Disposable;
+
+/**
+ * The grid state and tick kernel of an automaton. A <code>Simulation</code> does
+ * not depend on any rendering types, so it can be created and updated without a
+ * GL context. Views read the state of the cells that have changed since they last
+ * cleared {@link #getChangedCells()}.
+ */
+public abstract class Simulation implements Disposable
+{
+	private String name;
+	private int columns;
+	private int rows;
+	private long ticks;
+
+	private BitSet changedCells;
+
+	private String[] populationNames;
+	protected int[] populations;
+	private PopulationHistory populationHistory;
+
+
+	public Simulation(String name, int columns, int rows, String... populationNames)
+	{
+		this.name = name;
+		this.columns = columns;
+		this.rows = rows;
+		this.populationNames = populationNames;
+
+		populations = new int[populationNames.length];
+		populationHistory = new PopulationHistory(populationNames.length, PopulationHistory.DEFAULT_CAPACITY);
+		changedCells = new BitSet(columns * rows);
+	}
+
+
+	public String getName()
+	{
+		return name;
+	}
+
+
+	public int getColumnCount()
+	{
+		return columns;
+	}
+
+
+	public int getRowCount()
+	{
+		return rows;
+	}
+
+
+	public int getCellCount()
+	{
+		return columns * rows;
+	}
+
+
+	public int getIndex(int row, int column)
+	{
+		return row * columns + column;
+	}
+
+
+	public int getRow(int index)
+	{
+		return index / columns;
+	}
+
+
+	public int getColumn(int index)
+	{
+		return index % columns;
+	}
+
+
+	/**
+	 * @return The number of ticks that have been simulated since the starting grid was
+	 *         created.
+	 */
+	public long getTicks()
+	{
+		return ticks;
+	}
+
+
+	public void update()
+	{
+		for (int i = 0; i < populations.length; i++)
+			populations[i] = 0;
+
+		step();
+		ticks++;
+		populationHistory.record(getTicks(), populations);
+	}
+
+
+	protected abstract void createStartingGrid();
+	protected abstract void step();
+
+
+	protected void markChanged(int index)
+	{
+		changedCells.set(index);
+	}
+
+
+	/**
+	 * @return The cells that have changed since the set was last cleared. Views
+	 *         should clear the set once they have read the changed cells.
+	 */
+	public BitSet getChangedCells()
+	{
+		return changedCells;
+	}
+
+
+	public String[] getPopulationNames()
+	{
+		return populationNames;
+	}
+
+
+	/**
+	 * @return The size of the specified population, as counted during the last tick.
+	 */
+	public int getPopulation(int population)
+	{
+		return populations[population];
+	}
+
+
+	/**
+	 * @return The populations of the most recent ticks.
+	 */
+	public PopulationHistory getPopulationHistory()
+	{
+		return populationHistory;
+	}
+
+
+	/**
+	 * @return A rough estimate of the memory used by the simulation, in bytes. By
+	 *         default this is the size of its state, the changed cells and the
+	 *         population history.
+	 */
+	public long getMemoryEstimate()
+	{
+		return getStateSize() + getCellCount() / 8 + populationHistory.getMemoryEstimate();
+	}
+
+
+	/**
+	 * @return The number of bytes that {@link #writeState(ByteBuffer)} will write
+	 *         for the current state.
+	 */
+	protected int getStateSize()
+	{
+		return 8 + 4 + populations.length * 4;
+	}
+
+
+	/**
+	 * Writes everything needed to continue the simulation from its current tick
+	 * (but not the changed cells) to a {@link Checkpoint}. Subclasses that override
+	 * this must call the super method first, and also override
+	 * {@link #getStateSize()} and {@link #readState(ByteBuffer)}.
+	 */
+	protected void writeState(ByteBuffer buffer)
+	{
+		buffer.putLong(ticks);
+		buffer.putInt(populations.length);
+		for (int i = 0; i < populations.length; i++)
+			buffer.putInt(populations[i]);
+	}
+
+
+	/**
+	 * Reads a state written by {@link #writeState(ByteBuffer)}, without changing the
+	 * simulation. The state only replaces the current one (and marks all cells as
+	 * changed) once the returned <code>Runnable</code> is run, so that a corrupt
+	 * state cannot leave the simulation half-restored. Subclasses that override this
+	 * must call the super method first, parse their own part into new objects, and
+	 * return a <code>Runnable</code> that runs the one from the super method before
+	 * replacing their fields.
+	 * 
+	 * @throws IOException If the state does not fit this simulation.
+	 * @throws BufferUnderflowException If the state is too short.
+	 */
+	protected Runnable readState(ByteBuffer buffer) throws IOException
+	{
+		final long ticks = buffer.getLong();
+
+		int populationCount = buffer.getInt();
+		if (populationCount != populations.length)
+			throw new IOException("Expected " + populations.length + " populations, found " + populationCount + "!");
+
+		final int[] populations = new int[populationCount];
+		for (int i = 0; i < populations.length; i++)
+			populations[i] = buffer.getInt();
+
+		return new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				Simulation.this.ticks = ticks;
+				System.arraycopy(populations, 0, Simulation.this.populations, 0, populations.length);
+				changedCells.set(0, getCellCount());
+			}
+		};
+	}
+
+
+	@Override
+	public void dispose()
+	{
+	}
+}
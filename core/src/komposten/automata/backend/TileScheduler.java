@@ -0,0 +1,480 @@
+package komposten.automata.backend;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits a grid into tiles and updates them on a {@link ForkJoinPool}.
+ * <p>
+ * The tiles are divided into four phases in a checkerboard pattern, and the phases
+ * are run one after another. Two tiles in the same phase are always separated by a
+ * tile from another phase, and every tile is at least <code>2 * reach + 1</code>
+ * cells wide and high. As long as a rule only reads and writes cells within
+ * <code>reach</code> of the cell being updated, the tiles in a phase can therefore
+ * be updated in parallel without any synchronisation.
+ * <p>
+ * Each thread updates its tiles using its own {@link Worker}, which holds
+ * population counters and the cells it has changed. The counters are merged into
+ * the simulation's at the end of the tick. The first worker marks its changed cells
+ * directly in the simulation's set, while the others only record them for the
+ * tiles they have changed, and are merged into the set after each phase. Both the
+ * memory and the merge therefore grow with the number of active tiles rather than
+ * with the grid.
+ */
+public class TileScheduler
+{
+	public static final int DEFAULT_TILE_SIZE = 64;
+	private static final int PHASES = 4;
+
+	public interface TileUpdater
+	{
+		/**
+		 * Updates the cells in the rows <code>[firstRow, endRow)</code> and the columns
+		 * <code>[firstColumn, endColumn)</code>.
+		 */
+		public void updateTile(Worker worker, int firstRow, int endRow, int firstColumn, int endColumn);
+	}
+
+
+	public static class Worker
+	{
+		public final int[] populations;
+		private BitSet changedCells;
+		private TileChanges tileChanges;
+
+
+		private Worker(int populationCount, BitSet changedCells, TileChanges tileChanges)
+		{
+			this.populations = new int[populationCount];
+			this.changedCells = changedCells;
+			this.tileChanges = tileChanges;
+		}
+
+
+		public void markChanged(int index)
+		{
+			if (changedCells != null)
+				changedCells.set(index);
+			else
+				tileChanges.set(index, index + 1);
+		}
+
+
+		/**
+		 * Marks the cells <code>[fromIndex, toIndex)</code> as changed.
+		 */
+		public void markChanged(int fromIndex, int toIndex)
+		{
+			if (changedCells != null)
+				changedCells.set(fromIndex, toIndex);
+			else
+				tileChanges.set(fromIndex, toIndex);
+		}
+	}
+
+
+	/**
+	 * The changed cells of one worker, recorded in one block of bits for each tile
+	 * that has changed any cells. A block covers the tile and the cells within
+	 * <code>reach</code> of it, row by row. The blocks are reused after they have
+	 * been merged.
+	 */
+	private static class TileChanges
+	{
+		private int columns;
+		private int rows;
+		private int reach;
+		private int blockWords;
+		private int blockRows;
+
+		private long[][] blocks = new long[0][];
+		/** The first row, end row and first column of each block in use. */
+		private int[] blockBounds = new int[0];
+		private int usedBlocks;
+
+		private int tileFirstRow;
+		private int tileEndRow;
+		private int tileFirstColumn;
+		private long[] block;
+		private int blockFirstRow;
+		private int blockFirstColumn;
+
+
+		public TileChanges(int columns, int rows, int reach, int maxTileColumns, int maxTileRows)
+		{
+			this.columns = columns;
+			this.rows = rows;
+			this.reach = reach;
+			blockWords = (maxTileColumns + 2 * reach + 63) >>> 6;
+			blockRows = maxTileRows + 2 * reach;
+		}
+
+
+		/**
+		 * Starts recording the changes of a new tile. Its block is only taken once it
+		 * changes a cell.
+		 */
+		public void beginTile(int firstRow, int endRow, int firstColumn)
+		{
+			tileFirstRow = firstRow;
+			tileEndRow = endRow;
+			tileFirstColumn = firstColumn;
+			block = null;
+		}
+
+
+		/**
+		 * Marks the cells <code>[fromIndex, toIndex)</code>, which must be within
+		 * <code>reach</code> of the current tile, as changed.
+		 */
+		public void set(int fromIndex, int toIndex)
+		{
+			if (block == null)
+				takeBlock();
+
+			while (fromIndex < toIndex)
+			{
+				int row = fromIndex / columns;
+				int rowStart = row * columns;
+				int end = Math.min(toIndex, rowStart + columns);
+
+				int bitRow = (row - blockFirstRow) * blockWords;
+				int first = fromIndex - rowStart - blockFirstColumn;
+				int last = end - 1 - rowStart - blockFirstColumn;
+				int firstWord = bitRow + (first >>> 6);
+				int lastWord = bitRow + (last >>> 6);
+
+				if (firstWord == lastWord)
+				{
+					block[firstWord] |= (-1L << first) & (-1L >>> (63 - (last & 63)));
+				}
+				else
+				{
+					block[firstWord] |= -1L << first;
+					for (int w = firstWord + 1; w < lastWord; w++)
+						block[w] = -1L;
+					block[lastWord] |= -1L >>> (63 - (last & 63));
+				}
+
+				fromIndex = end;
+			}
+		}
+
+
+		private void takeBlock()
+		{
+			if (usedBlocks == blocks.length)
+			{
+				int length = Math.max(4, blocks.length * 2);
+				blocks = Arrays.copyOf(blocks, length);
+				blockBounds = Arrays.copyOf(blockBounds, length * 3);
+			}
+			if (blocks[usedBlocks] == null)
+				blocks[usedBlocks] = new long[blockWords * blockRows];
+
+			blockFirstRow = Math.max(0, tileFirstRow - reach);
+			blockFirstColumn = Math.max(0, tileFirstColumn - reach);
+			block = blocks[usedBlocks];
+			blockBounds[usedBlocks * 3] = blockFirstRow;
+			blockBounds[usedBlocks * 3 + 1] = Math.min(rows, tileEndRow + reach);
+			blockBounds[usedBlocks * 3 + 2] = blockFirstColumn;
+			usedBlocks++;
+		}
+
+
+		/**
+		 * Adds the recorded changes to <code>changedCells</code>, one run of changed
+		 * cells at a time, and clears them.
+		 */
+		public void mergeInto(BitSet changedCells)
+		{
+			for (int i = 0; i < usedBlocks; i++)
+			{
+				long[] bits = blocks[i];
+				int firstRow = blockBounds[i * 3];
+				int endRow = blockBounds[i * 3 + 1];
+				int firstColumn = blockBounds[i * 3 + 2];
+
+				for (int r = firstRow; r < endRow; r++)
+				{
+					int bitRow = (r - firstRow) * blockWords;
+					int rowStart = r * columns + firstColumn;
+
+					for (int w = 0; w < blockWords; w++)
+					{
+						long word = bits[bitRow + w];
+						if (word == 0)
+							continue;
+						bits[bitRow + w] = 0;
+
+						int wordStart = rowStart + (w << 6);
+						while (word != 0)
+						{
+							int start = Long.numberOfTrailingZeros(word);
+							int length = Long.numberOfTrailingZeros(~(word >>> start));
+							changedCells.set(wordStart + start, wordStart + start + length);
+							word = (start + length == 64 ? 0 : word & (-1L << (start + length)));
+						}
+					}
+				}
+			}
+
+			usedBlocks = 0;
+			block = null;
+		}
+	}
+
+
+	private int threads;
+	private ForkJoinPool pool;
+	private Worker[] workers;
+	private PhaseTask phaseTask;
+	private TileTask[] tasks;
+
+	private int[] rowBounds;
+	private int[] columnBounds;
+	private int[][] phases;
+	private AtomicInteger nextTile;
+
+	private TileUpdater updater;
+	private BitSet changedCells;
+
+
+	/**
+	 * @param columns The number of columns in the grid.
+	 * @param rows The number of rows in the grid.
+	 * @param reach How far from a cell the rules may read or write.
+	 * @param threads The number of threads to update the tiles on.
+	 * @param populationCount The number of population counters in each worker.
+	 * @param changedCells The simulation's set of changed cells.
+	 */
+	public TileScheduler(int columns, int rows, int reach, int threads, int populationCount, BitSet changedCells)
+	{
+		this(columns, rows, DEFAULT_TILE_SIZE, reach, threads, populationCount, changedCells);
+	}
+
+
+	public TileScheduler(int columns, int rows, int tileSize, int reach, int threads, int populationCount, BitSet changedCells)
+	{
+		if (threads < 1)
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+
+		this.threads = threads;
+		this.changedCells = changedCells;
+
+		tileSize = Math.max(tileSize, 2 * reach + 1);
+		columnBounds = createBounds(columns, tileSize);
+		rowBounds = createBounds(rows, tileSize);
+		createPhases();
+
+		workers = new Worker[threads];
+		workers[0] = new Worker(populationCount, changedCells, null);
+		for (int i = 1; i < threads; i++)
+		{
+			TileChanges tileChanges = new TileChanges(columns, rows, reach, getMaxSpan(columnBounds), getMaxSpan(rowBounds));
+			workers[i] = new Worker(populationCount, null, tileChanges);
+		}
+
+		if (threads > 1)
+		{
+			pool = new ForkJoinPool(threads);
+			nextTile = new AtomicInteger();
+			phaseTask = new PhaseTask();
+			tasks = new TileTask[threads];
+			for (int i = 0; i < threads; i++)
+				tasks[i] = new TileTask(workers[i]);
+		}
+	}
+
+
+	/**
+	 * Splits <code>length</code> cells into as many spans of at least
+	 * <code>tileSize</code> cells as possible, and returns the start of each span
+	 * followed by the end of the last one.
+	 */
+	private int[] createBounds(int length, int tileSize)
+	{
+		int tiles = Math.max(1, length / tileSize);
+		int[] bounds = new int[tiles + 1];
+
+		for (int i = 0; i <= tiles; i++)
+			bounds[i] = (int) ((long) i * length / tiles);
+
+		return bounds;
+	}
+
+
+	private int getMaxSpan(int[] bounds)
+	{
+		int max = 0;
+		for (int i = 0; i + 1 < bounds.length; i++)
+			max = Math.max(max, bounds[i + 1] - bounds[i]);
+		return max;
+	}
+
+
+	private void createPhases()
+	{
+		int tileColumns = columnBounds.length - 1;
+		int tileRows = rowBounds.length - 1;
+
+		int[] phaseSizes = new int[PHASES];
+		for (int r = 0; r < tileRows; r++)
+			for (int c = 0; c < tileColumns; c++)
+				phaseSizes[getPhase(r, c)]++;
+
+		phases = new int[PHASES][];
+		for (int i = 0; i < PHASES; i++)
+			phases[i] = new int[phaseSizes[i]];
+
+		int[] counts = new int[PHASES];
+		for (int r = 0; r < tileRows; r++)
+		{
+			for (int c = 0; c < tileColumns; c++)
+			{
+				int phase = getPhase(r, c);
+				phases[phase][counts[phase]++] = r * tileColumns + c;
+			}
+		}
+	}
+
+
+	private int getPhase(int tileRow, int tileColumn)
+	{
+		return (tileRow % 2) * 2 + (tileColumn % 2);
+	}
+
+
+	public int getThreadCount()
+	{
+		return threads;
+	}
+
+
+	public int getTileCount()
+	{
+		return (columnBounds.length - 1) * (rowBounds.length - 1);
+	}
+
+
+	/**
+	 * Updates all tiles using the specified updater, and adds the workers' changed
+	 * cells to the simulation's set after each phase and their population counts to
+	 * <code>populations</code> at the end.
+	 */
+	public void update(TileUpdater updater, int[] populations)
+	{
+		this.updater = updater;
+
+		for (int[] phase : phases)
+		{
+			if (pool == null || phase.length <= 1)
+			{
+				for (int tile : phase)
+					updateTile(workers[0], tile);
+			}
+			else
+			{
+				nextTile.set(0);
+				phaseTask.reinitialize();
+				phaseTask.taskCount = Math.min(tasks.length, phase.length);
+				for (int i = 0; i < phaseTask.taskCount; i++)
+				{
+					tasks[i].reinitialize();
+					tasks[i].phase = phase;
+				}
+
+				pool.invoke(phaseTask);
+				mergeChanges();
+			}
+		}
+
+		this.updater = null;
+		mergePopulations(populations);
+	}
+
+
+	private void updateTile(Worker worker, int tile)
+	{
+		int tileColumns = columnBounds.length - 1;
+		int tileRow = tile / tileColumns;
+		int tileColumn = tile % tileColumns;
+
+		if (worker.tileChanges != null)
+			worker.tileChanges.beginTile(rowBounds[tileRow], rowBounds[tileRow + 1], columnBounds[tileColumn]);
+		updater.updateTile(worker, rowBounds[tileRow], rowBounds[tileRow + 1], columnBounds[tileColumn], columnBounds[tileColumn + 1]);
+	}
+
+
+	private void mergeChanges()
+	{
+		for (int i = 1; i < workers.length; i++)
+			workers[i].tileChanges.mergeInto(changedCells);
+	}
+
+
+	private void mergePopulations(int[] populations)
+	{
+		for (Worker worker : workers)
+		{
+			for (int j = 0; j < populations.length; j++)
+			{
+				populations[j] += worker.populations[j];
+				worker.populations[j] = 0;
+			}
+		}
+	}
+
+
+	public void shutdown()
+	{
+		if (pool != null)
+			pool.shutdown();
+	}
+
+
+	private class PhaseTask extends RecursiveAction
+	{
+		private int taskCount;
+
+
+		@Override
+		protected void compute()
+		{
+			for (int i = 1; i < taskCount; i++)
+				tasks[i].fork();
+
+			tasks[0].invoke();
+
+			for (int i = 1; i < taskCount; i++)
+				tasks[i].join();
+		}
+	}
+
+
+	private class TileTask extends RecursiveAction
+	{
+		private Worker worker;
+		private int[] phase;
+
+
+		public TileTask(Worker worker)
+		{
+			this.worker = worker;
+		}
+
+
+		@Override
+		protected void compute()
+		{
+			int tile;
+			while ((tile = nextTile.getAndIncrement()) < phase.length)
+			{
+				updateTile(worker, phase[tile]);
+			}
+		}
+	}
+}
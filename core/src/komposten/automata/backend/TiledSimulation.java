@@ -0,0 +1,138 @@
+package komposten.automata.backend;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.RandomXS128;
+
+import komposten.automata.backend.TileScheduler.TileUpdater;
+
+/**
+ * A {@link Simulation} whose tick is split into tiles by a {@link TileScheduler},
+ * so that it can be run on several threads.
+ * <p>
+ * The rules should take their random values from {@link #cellRandom}, which
+ * derives them from the cell being updated rather than from the thread updating
+ * it. Since the tiles do not depend on the number of threads either, a simulation
+ * with a given seed always gives the same result.
+ */
+public abstract class TiledSimulation extends Simulation implements TileUpdater
+{
+	private int reach;
+	private TileScheduler scheduler;
+	private long seed;
+	/** Used to create the starting grid. */
+	protected RandomXS128 random;
+	/** Used by the rules. Set to the current tick before each tick. */
+	protected CellRandom cellRandom;
+
+
+	/**
+	 * @param reach How far from a cell the rules may read or write.
+	 * @param seed The seed for the starting grid and the rules.
+	 */
+	public TiledSimulation(String name, int columns, int rows, int reach, long seed, String... populationNames)
+	{
+		super(name, columns, rows, populationNames);
+		this.reach = reach;
+		this.seed = seed;
+		random = new RandomXS128(seed);
+		cellRandom = new CellRandom(seed);
+		setThreadCount(Runtime.getRuntime().availableProcessors());
+	}
+
+
+	public void setThreadCount(int threads)
+	{
+		if (scheduler != null)
+		{
+			if (scheduler.getThreadCount() == threads)
+				return;
+			scheduler.shutdown();
+		}
+
+		scheduler = new TileScheduler(getColumnCount(), getRowCount(), reach, threads, populations.length, getChangedCells());
+	}
+
+
+	public int getThreadCount()
+	{
+		return scheduler.getThreadCount();
+	}
+
+
+	public long getSeed()
+	{
+		return seed;
+	}
+
+
+	/**
+	 * @return A random seed, for simulations that are not given one.
+	 */
+	protected static long createSeed()
+	{
+		return MathUtils.random.nextLong();
+	}
+
+
+	@Override
+	protected void step()
+	{
+		cellRandom.setTick(getTicks());
+		scheduler.update(this, populations);
+	}
+
+
+	@Override
+	protected int getStateSize()
+	{
+		return super.getStateSize() + 3 * 8;
+	}
+
+
+	@Override
+	protected void writeState(ByteBuffer buffer)
+	{
+		super.writeState(buffer);
+		buffer.putLong(seed);
+		buffer.putLong(random.getState(0));
+		buffer.putLong(random.getState(1));
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The seed is restored too, so that the rules continue with the same random
+	 * values as the simulation that was saved.
+	 */
+	@Override
+	protected Runnable readState(ByteBuffer buffer) throws IOException
+	{
+		final Runnable superState = super.readState(buffer);
+		final long seed = buffer.getLong();
+		final long state0 = buffer.getLong();
+		final long state1 = buffer.getLong();
+
+		return new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				superState.run();
+				TiledSimulation.this.seed = seed;
+				random.setState(state0, state1);
+				cellRandom = new CellRandom(seed);
+			}
+		};
+	}
+
+
+	@Override
+	public void dispose()
+	{
+		scheduler.shutdown();
+	}
+}
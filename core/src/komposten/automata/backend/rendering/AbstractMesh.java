@@ -1,10 +1,18 @@
 package komposten.automata.backend.rendering;
 
+import java.util.BitSet;
+
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.utils.Disposable;
 
 public abstract class AbstractMesh implements Disposable
 {
+	/**
+	 * Runs of dirty cells separated by at most this many clean cells are uploaded
+	 * together, since one larger copy is cheaper than several small ones.
+	 */
+	private static final int MAX_CLEAN_GAP = 8;
+	
 	protected float width;
 	protected float height;
 	protected int columns;
@@ -12,6 +20,9 @@ public abstract class AbstractMesh implements Disposable
 	protected float cellWidth;
 	protected float cellHeight;
 	
+	private BitSet dirtyCells;
+	private long uploadedBytes;
+	
 	public AbstractMesh(float width, float height, int targetSize)
 	{
 		this.width = width;
@@ -20,6 +31,7 @@ public abstract class AbstractMesh implements Disposable
 		rows = (int) Math.floor(height / targetSize);
 		cellWidth = width / columns;
 		cellHeight = height / rows;
+		dirtyCells = new BitSet(columns * rows);
 	}
 	
 	
@@ -66,4 +78,124 @@ public abstract class AbstractMesh implements Disposable
 	
 	
 	public abstract void setColor(Color color, int index);
+	
+	
+	/**
+	 * @return A rough estimate of the memory used by the mesh, both on the heap and
+	 *         on the GPU, in bytes.
+	 */
+	public long getMemoryEstimate()
+	{
+		return getCellCount() / 8;
+	}
+	
+	
+	protected void markDirty(int index)
+	{
+		dirtyCells.set(index);
+	}
+	
+	
+	protected boolean hasDirtyCells()
+	{
+		return !dirtyCells.isEmpty();
+	}
+	
+	
+	protected void clearDirtyCells()
+	{
+		dirtyCells.clear();
+	}
+	
+	
+	/**
+	 * Coalesces the dirty cells into contiguous runs, calls
+	 * {@link #uploadCells(int, int)} for each run and then clears the dirty cells.
+	 */
+	protected void uploadDirtyCells()
+	{
+		int first = dirtyCells.nextSetBit(0);
+		
+		while (first >= 0)
+		{
+			int end = dirtyCells.nextClearBit(first);
+			int next = dirtyCells.nextSetBit(end);
+			
+			while (next >= 0 && next - end <= MAX_CLEAN_GAP)
+			{
+				end = dirtyCells.nextClearBit(next);
+				next = dirtyCells.nextSetBit(end);
+			}
+			
+			uploadCells(first, end);
+			first = next;
+		}
+		
+		dirtyCells.clear();
+	}
+	
+	
+	/**
+	 * Coalesces the rows that contain dirty cells into bands of adjacent rows, calls
+	 * {@link #uploadRows(int, int)} for each band and then clears the dirty cells.
+	 */
+	protected void uploadDirtyRows()
+	{
+		int firstRow = -1;
+		int endRow = -1;
+		int index = dirtyCells.nextSetBit(0);
+		
+		while (index >= 0)
+		{
+			int row = getRow(index);
+			
+			if (row != endRow)
+			{
+				if (firstRow >= 0)
+					uploadRows(firstRow, endRow);
+				firstRow = row;
+			}
+			
+			endRow = row + 1;
+			index = dirtyCells.nextSetBit(endRow * columns);
+		}
+		
+		if (firstRow >= 0)
+			uploadRows(firstRow, endRow);
+		
+		dirtyCells.clear();
+	}
+	
+	
+	protected void countUploadedBytes(long bytes)
+	{
+		uploadedBytes += bytes;
+	}
+	
+	
+	/**
+	 * @return The number of bytes uploaded since the last call to this method.
+	 */
+	public long pollUploadedBytes()
+	{
+		long bytes = uploadedBytes;
+		uploadedBytes = 0;
+		return bytes;
+	}
+	
+	
+	/**
+	 * Uploads the cells in the range <code>[firstCell, endCell)</code>.
+	 */
+	protected void uploadCells(int firstCell, int endCell)
+	{
+	}
+	
+	
+	/**
+	 * Uploads the cells in the rows <code>[firstRow, endRow)</code>.
+	 */
+	protected void uploadRows(int firstRow, int endRow)
+	{
+	}
 }
@@ -1,126 +1,121 @@
 package komposten.automata.backend.rendering;
 
+import java.nio.FloatBuffer;
+
+import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Color;
-import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 
 
+/**
+ * A grid with one quad per cell, drawn as two triangles without indices. The
+ * vertices are written once to a {@link VertexBuffer}, after which
+ * {@link #setColor(Color, int)} only overwrites the colours of a cell in place.
+ */
 public class GridMesh extends AbstractMesh
 {
-	private Mesh mesh;
+	private static final int VERTICES_PER_CELL = 6;
+	/** The corners of the vertices of a cell, as (x, y) pairs. */
+	private static final int[] CORNERS = { 0, 0, 1, 0, 0, 1, 1, 1, 1, 0, 0, 1 };
 
-	private Cell[] cells;
-	
-	private float[] vertexArray;
+	private VertexFormat format;
+	private VertexBuffer vertices;
+	private int valuesPerCell;
 
 
 	public GridMesh(float width, float height, int targetSize)
+	{
+		this(width, height, targetSize, VertexFormat.Default);
+	}
+
+
+	public GridMesh(float width, float height, int targetSize, VertexFormat format)
 	{
 		super(width, height, targetSize);
+		this.format = format;
+		valuesPerCell = VERTICES_PER_CELL * format.valuesPerVertex;
+		vertices = new VertexBuffer(format, getCellCount() * VERTICES_PER_CELL);
 		createCells();
-		createMesh();
+		vertices.upload();
 	}
 
 
 	private void createCells()
 	{
-		cells = new Cell[columns * rows];
-
-//		System.out.println(columnVertices + ", " + rowVertices + ", " + cellWidth + ", " + cellHeight);
+		FloatBuffer buffer = vertices.getVertices();
 
-		//Create cells.
 		for (int r = 0; r < rows; r++)
 		{
 			for (int c = 0; c < columns; c++)
 			{
-				int index = r*columns + c;
-				
 				float x = c * cellWidth;
 				float y = r * cellHeight;
-				
-				Cell cell = new Cell(x, y, cellWidth, cellHeight, Color.BLACK);
-				
-				cells[index] = cell;
+				int offset = getIndex(r, c) * valuesPerCell;
+
+				for (int j = 0; j < VERTICES_PER_CELL; j++)
+				{
+					int cornerX = CORNERS[j*2];
+					int cornerY = CORNERS[j*2 + 1];
+					format.write(x + cornerX * cellWidth, y + cornerY * cellHeight, cornerX, 1 - cornerY, Color.BLACK,
+							buffer, offset + j*format.valuesPerVertex);
+				}
 			}
 		}
-		
 
-		System.out.println("===CELLS: [" + columns + ", " + rows + "]=" + cells.length);
-//		System.out.println("===lower left: " + vertices[0].toString(true) + ", upper right: " + vertices[vertices.length-1].toString(true));
-//		printArray(vertices, columnVertices);
+		System.out.println("===CELLS: [" + columns + ", " + rows + "]=" + getCellCount());
 	}
-	
-	
-	private void createVertexArray()
+
+
+	@Override
+	public void setColor(Color color, int index)
 	{
-		int valuesPerCell = 6 * Vertex.VALUES_PER_VERTEX;
-		vertexArray = new float[cells.length * valuesPerCell];
-		
-		int[] indexArray = new int[] { 0, 1, 3, 2, 1, 3 };
-		
-		for (int i = 0; i < cells.length; i++)
-		{
-			Cell cell = cells[i];
-			int index = i * valuesPerCell;
-			
-			for (int j = 0; j < 6; j++)
-			{
-				int k = index + j*Vertex.VALUES_PER_VERTEX;
-				Vertex vertex = cell.getVertices()[indexArray[j]];
-				
-				vertexArray[k+0] = vertex.x;
-				vertexArray[k+1] = vertex.y;
-				vertexArray[k+2] = vertex.z;
-				vertexArray[k+3] = vertex.u;
-				vertexArray[k+4] = vertex.v;
-				vertexArray[k+5] = vertex.r;
-				vertexArray[k+6] = vertex.g;
-				vertexArray[k+7] = vertex.b;
-				vertexArray[k+8] = vertex.a;
-			}
-		}
+		format.writeColor(color, vertices.getVertices(), index * valuesPerCell, VERTICES_PER_CELL);
+		markDirty(index);
 	}
 
 
-	private void createMesh()
+	public void refreshMesh()
 	{
-		createVertexArray();
-		
-//		System.out.println("Creating mesh...");
-		if (mesh == null)
-			mesh = new Mesh(false, true, vertexArray.length, 0, Vertex.VERTEX_ATTRIBUTES);
-		
-		mesh.setVertices(vertexArray);
-		
-//		System.out.println("Mesh created!");
-		
-//		System.out.println("Vertex objects: " + (cells.length * Cell.VERTICES_PER_CELL) + ", floats: " + vertexArray.length + ", in mesh: " + mesh.getNumVertices());
+		if (!hasDirtyCells())
+			return;
+
+		vertices.bind();
+		uploadDirtyCells();
+		vertices.unbind();
 	}
-	
-	
-	public Mesh getMesh()
+
+
+	@Override
+	protected void uploadCells(int firstCell, int endCell)
 	{
-		return mesh;
+		int count = (endCell - firstCell) * valuesPerCell;
+		vertices.update(firstCell * valuesPerCell, count);
+		countUploadedBytes(count * 4L);
 	}
-	
-	
-	@Override
-	public void setColor(Color color, int index)
+
+
+	/**
+	 * Draws the grid with <code>shader</code>, which must have been begun.
+	 */
+	public void render(ShaderProgram shader)
 	{
-		cells[index].setColor(color);
-		//FIXME GridMesh3; After updating a cell, add it to a "dirty" list. When refreshMesh() is called, don't recreate the entire vertex array. Instead just locate the vertices of the dirty cells and update them (then call setVertices()).
+		vertices.bind(shader);
+		Gdx.gl.glDrawArrays(GL20.GL_TRIANGLES, 0, getCellCount() * VERTICES_PER_CELL);
+		vertices.unbind(shader);
 	}
-	
-	
-	public void refreshMesh()
+
+
+	@Override
+	public long getMemoryEstimate()
 	{
-		createVertexArray();
-		mesh.updateVertices(0, vertexArray);
+		return super.getMemoryEstimate() + vertices.getMemoryEstimate();
 	}
-	
-	
+
+
 	@Override
 	public void dispose()
 	{
-		mesh.dispose();
+		vertices.dispose();
 	}
 }
@@ -1,18 +1,49 @@
 package komposten.automata.backend.rendering;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.Pixmap.Format;
 import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
 
 public class GridPixmap extends AbstractMesh
 {
+	/**
+	 * The size of the pixmap.
+	 */
+	public enum Resolution
+	{
+		/** One pixel per screen pixel. Each cell is painted as a rectangle. */
+		Screen,
+		/**
+		 * One texel per cell, which the GPU scales up with nearest filtering. The
+		 * colours are written straight into the pixels of the pixmap.
+		 */
+		Cell
+	}
+	
+	private static final int BYTES_PER_PIXEL = 4;
+	
+	private Resolution resolution;
 	private Pixmap pixmap;
+	private ByteBuffer pixels;
 	private Texture texture;
 
 	public GridPixmap(float width, float height, int targetSize)
+	{
+		this(width, height, targetSize, Resolution.Screen);
+	}
+
+
+	public GridPixmap(float width, float height, int targetSize, Resolution resolution)
 	{
 		super(width, height, targetSize);
+		this.resolution = resolution;
 		createCells();
 		refreshTexture();
 
@@ -22,6 +53,16 @@ public class GridPixmap extends AbstractMesh
 
 	private void createCells()
 	{
+		if (resolution == Resolution.Cell)
+		{
+			pixmap = new Pixmap(columns, rows, Format.RGBA8888);
+			pixels = pixmap.getPixels();
+			pixels.order(ByteOrder.BIG_ENDIAN);
+			pixmap.setColor(Color.WHITE);
+			pixmap.fill();
+			return;
+		}
+		
 		pixmap = new Pixmap((int)width, (int)height, Format.RGBA8888);
 
 		for (int r = 0; r < rows; r++)
@@ -41,18 +82,33 @@ public class GridPixmap extends AbstractMesh
 	@Override
 	public void setColor(Color color, int row, int column)
 	{
+		if (resolution == Resolution.Cell)
+		{
+			setColor(color, getIndex(row, column));
+			return;
+		}
+		
 		int x = (int) (column * cellWidth);
 		int y = (int) (row * cellHeight);
 		
 		pixmap.setColor(color);
 		pixmap.fillRectangle(x, y, (int)cellWidth, (int)cellHeight);
+		markDirty(getIndex(row, column));
 	}
 	
 	
 	@Override
 	public void setColor(Color color, int index)
 	{
-		setColor(color, getRow(index), getColumn(index));
+		if (resolution == Resolution.Cell)
+		{
+			pixels.putInt(index * BYTES_PER_PIXEL, Color.rgba8888(color));
+			markDirty(index);
+		}
+		else
+		{
+			setColor(color, getRow(index), getColumn(index));
+		}
 	}
 	
 	
@@ -62,14 +118,62 @@ public class GridPixmap extends AbstractMesh
 	}
 	
 	
+	/**
+	 * Uploads the rows of the pixmap that contain dirty cells to the texture. The
+	 * texture is only created once; later refreshes update it in place.
+	 */
 	public void refreshTexture()
 	{
-		if (texture != null)
+		if (texture == null)
 		{
-			texture.dispose();
+			texture = new Texture(pixmap);
+			texture.setFilter(TextureFilter.Nearest, TextureFilter.Nearest);
+			countUploadedBytes(pixmap.getPixels().capacity());
+			clearDirtyCells();
+			return;
 		}
 		
-		texture = new Texture(pixmap);
+		if (!hasDirtyCells())
+			return;
+		
+		texture.bind();
+		uploadDirtyRows();
+	}
+	
+	
+	/**
+	 * Uploads the pixels of the cell rows <code>[firstRow, endRow)</code> to the
+	 * (bound) texture.
+	 */
+	@Override
+	protected void uploadRows(int firstRow, int endRow)
+	{
+		int y = firstRow;
+		int endY = endRow;
+		if (resolution == Resolution.Screen)
+		{
+			y = (int) (firstRow * cellHeight);
+			endY = Math.min((int) ((endRow - 1) * cellHeight) + (int) cellHeight, pixmap.getHeight());
+		}
+		
+		int rowBytes = pixmap.getWidth() * BYTES_PER_PIXEL;
+		
+		ByteBuffer pixels = pixmap.getPixels();
+		pixels.position(y * rowBytes);
+		Gdx.gl.glTexSubImage2D(GL20.GL_TEXTURE_2D, 0, 0, y, pixmap.getWidth(), endY - y,
+				pixmap.getGLFormat(), pixmap.getGLType(), pixels);
+		pixels.position(0);
+		countUploadedBytes((long) (endY - y) * rowBytes);
+	}
+	
+	
+	/**
+	 * The pixels are kept both in the pixmap and in the texture.
+	 */
+	@Override
+	public long getMemoryEstimate()
+	{
+		return super.getMemoryEstimate() + (long) pixmap.getWidth() * pixmap.getHeight() * BYTES_PER_PIXEL * 2;
 	}
 	
 	
@@ -0,0 +1,256 @@
+package komposten.automata.backend.rendering;
+
+import java.util.BitSet;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.math.Matrix4;
+
+/**
+ * Maps a fixed-size window of slots onto the part of a (possibly much larger)
+ * grid that a camera can see, so that meshes and textures only have to hold and
+ * upload the visible cells.
+ * <p>
+ * Slot <code>(row, column)</code> covers the <code>stride * stride</code> cells
+ * starting at grid cell
+ * <code>(firstRow + row * stride, firstColumn + column * stride)</code>. The
+ * stride is 1 until the camera is zoomed out so far that the window can no
+ * longer cover the visible cells. It is then doubled as needed, and each slot
+ * shows a downsampled aggregate of its cells.
+ * <p>
+ * The window is drawn in its own coordinates, where a slot is
+ * <code>cellSize</code> units wide, using the matrix from
+ * {@link #getTransform(boolean)}. In grid coordinates row 0 is at the bottom.
+ */
+public class GridViewport
+{
+	/** The maximum number of cells sampled per axis when aggregating a slot. */
+	public static final int SAMPLES_PER_AXIS = 4;
+
+	private OrthographicCamera camera;
+	private int gridColumns;
+	private int gridRows;
+	private int columns;
+	private int rows;
+	private float cellSize;
+
+	private int firstColumn;
+	private int firstRow;
+	private int stride;
+	private Matrix4 transform;
+
+
+	/**
+	 * @param gridColumns The number of columns in the grid.
+	 * @param gridRows The number of rows in the grid.
+	 * @param width The width of the screen, in pixels.
+	 * @param height The height of the screen, in pixels.
+	 * @param cellSize The size of a cell in world units when the stride is 1.
+	 */
+	public GridViewport(OrthographicCamera camera, int gridColumns, int gridRows, float width, float height, float cellSize)
+	{
+		this.camera = camera;
+		this.gridColumns = gridColumns;
+		this.gridRows = gridRows;
+		this.cellSize = cellSize;
+
+		//One extra slot, since the window is aligned to whole cells.
+		columns = Math.min((int) Math.ceil(width / cellSize) + 1, gridColumns);
+		rows = Math.min((int) Math.ceil(height / cellSize) + 1, gridRows);
+		stride = 0; //So that the first update() reports a change.
+		transform = new Matrix4();
+	}
+
+
+	/**
+	 * Fits the window to the part of the grid that the camera can see.
+	 *
+	 * @return <code>true</code> if the window moved or changed stride, in which case
+	 *         every slot must be rebuilt.
+	 */
+	public boolean update()
+	{
+		float visibleColumns = camera.viewportWidth * camera.zoom / cellSize;
+		float visibleRows = camera.viewportHeight * camera.zoom / cellSize;
+
+		int newStride = 1;
+		while (columns * newStride < Math.min(visibleColumns + newStride, gridColumns)
+				|| rows * newStride < Math.min(visibleRows + newStride, gridRows))
+		{
+			newStride *= 2;
+		}
+
+		float left = camera.position.x / cellSize - visibleColumns / 2;
+		float bottom = camera.position.y / cellSize - visibleRows / 2;
+		int newFirstColumn = getFirst(left, newStride, columns, gridColumns);
+		int newFirstRow = getFirst(bottom, newStride, rows, gridRows);
+
+		if (newStride == stride && newFirstColumn == firstColumn && newFirstRow == firstRow)
+			return false;
+
+		stride = newStride;
+		firstColumn = newFirstColumn;
+		firstRow = newFirstRow;
+		return true;
+	}
+
+
+	private int getFirst(float visibleStart, int stride, int slots, int cells)
+	{
+		int alignedCells = (cells + stride - 1) / stride * stride;
+		int first = (int) Math.floor(visibleStart);
+		first = Math.min(first, alignedCells - slots * stride);
+		first = Math.max(first, 0);
+		return first - first % stride;
+	}
+
+
+	public int getColumnCount()
+	{
+		return columns;
+	}
+
+
+	public int getRowCount()
+	{
+		return rows;
+	}
+
+
+	public int getSlotCount()
+	{
+		return columns * rows;
+	}
+
+
+	public int getStride()
+	{
+		return stride;
+	}
+
+
+	/**
+	 * Sets a bit in <code>slots</code> for each slot that contains a changed cell.
+	 * Only the part of <code>changedCells</code> covered by the window is searched.
+	 */
+	public void collectChangedSlots(BitSet changedCells, BitSet slots)
+	{
+		int endRow = Math.min(firstRow + rows * stride, gridRows);
+		int endColumn = Math.min(firstColumn + columns * stride, gridColumns);
+
+		for (int r = firstRow; r < endRow; r++)
+		{
+			int rowStart = r * gridColumns;
+			int rowEnd = rowStart + endColumn;
+			int slotRowStart = ((r - firstRow) / stride) * columns;
+
+			for (int i = changedCells.nextSetBit(rowStart + firstColumn); i >= 0 && i < rowEnd; i = changedCells.nextSetBit(i + 1))
+			{
+				slots.set(slotRowStart + (i - rowStart - firstColumn) / stride);
+			}
+		}
+	}
+
+
+	/**
+	 * @return The number of cells sampled per axis when aggregating a slot.
+	 */
+	public int getSamplesPerAxis()
+	{
+		return Math.min(stride, SAMPLES_PER_AXIS);
+	}
+
+
+	/**
+	 * @param sampleRow A sample row in the slot, in the range
+	 *          <code>[0, getSamplesPerAxis())</code>.
+	 * @param sampleColumn A sample column in the slot, in the range
+	 *          <code>[0, getSamplesPerAxis())</code>.
+	 * @return The grid index of the sampled cell, or <code>-1</code> if it is outside
+	 *         the grid.
+	 */
+	public int getCellIndex(int slot, int sampleRow, int sampleColumn)
+	{
+		int step = stride / getSamplesPerAxis();
+		int row = firstRow + (slot / columns) * stride + sampleRow * step;
+		int column = firstColumn + (slot % columns) * stride + sampleColumn * step;
+
+		if (row >= gridRows || column >= gridColumns)
+			return -1;
+
+		return row * gridColumns + column;
+	}
+
+
+	/**
+	 * Gets the colour of a slot: the colour of its cell if the stride is 1, and
+	 * otherwise the average colour of up to {@link #SAMPLES_PER_AXIS}<sup>2</sup>
+	 * evenly spaced cells. Slots outside the grid are black.
+	 */
+	public Color getSlotColor(int slot, CellColors colors, Color color)
+	{
+		if (stride == 1)
+		{
+			int index = getCellIndex(slot, 0, 0);
+			return (index < 0 ? color.set(Color.BLACK) : colors.getColor(index, color));
+		}
+
+		float r = 0, g = 0, b = 0, a = 0;
+		int count = 0;
+		int samples = getSamplesPerAxis();
+
+		for (int sampleRow = 0; sampleRow < samples; sampleRow++)
+		{
+			for (int sampleColumn = 0; sampleColumn < samples; sampleColumn++)
+			{
+				int index = getCellIndex(slot, sampleRow, sampleColumn);
+				if (index < 0)
+					continue;
+
+				colors.getColor(index, color);
+				r += color.r;
+				g += color.g;
+				b += color.b;
+				a += color.a;
+				count++;
+			}
+		}
+
+		if (count == 0)
+			return color.set(Color.BLACK);
+
+		return color.set(r / count, g / count, b / count, a / count);
+	}
+
+
+	/**
+	 * @param flipY <code>true</code> if row 0 of the mesh or texture is at its top
+	 *          (as for a texture drawn on a {@link Quad}), <code>false</code> if it
+	 *          is at the bottom.
+	 * @return The camera's matrix, combined with the transform from window
+	 *         coordinates to world coordinates.
+	 */
+	public Matrix4 getTransform(boolean flipY)
+	{
+		transform.set(camera.combined);
+		transform.translate(firstColumn * cellSize, firstRow * cellSize, 0);
+
+		if (flipY)
+		{
+			transform.translate(0, rows * stride * cellSize, 0);
+			transform.scale(stride, -stride, 1);
+		}
+		else
+		{
+			transform.scale(stride, stride, 1);
+		}
+
+		return transform;
+	}
+
+
+	public interface CellColors
+	{
+		public Color getColor(int index, Color color);
+	}
+}
@@ -1,158 +1,206 @@
 package komposten.automata.backend.rendering;
 
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Color;
-import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.BufferUtils;
 
 
+/**
+ * A grid with one quad per cell, drawn as two indexed triangles. The vertices are
+ * written once to a {@link VertexBuffer}, after which
+ * {@link #setColor(Color, int)} only overwrites the colours of a cell in place.
+ * The indices never change, so they are only kept on the GPU.
+ * <p>
+ * With OpenGL 3 the indices are 32-bit and the grid is drawn in one call. Otherwise
+ * the indices are 16-bit, so the grid is drawn in batches of
+ * {@value #CELLS_PER_BATCH} cells (65536 vertices), which all use the indices of
+ * the first batch with the attributes moved to their first vertex. The 16-bit
+ * indices can also be forced, e.g. to benchmark them where OpenGL 3 is available.
+ */
 public class IndexGridMesh extends AbstractMesh
 {
-	private Mesh mesh;
-	
-	private Cell[] cells;
-	
-	private float[] vertexArray;
-	private short[] indexArray;
+	private static final int VERTICES_PER_CELL = 4;
+	private static final int INDICES_PER_CELL = 6;
+	private static final int CELLS_PER_BATCH = 65536 / VERTICES_PER_CELL;
+	/** The corners of the vertices of a cell, as (x, y) pairs. */
+	private static final int[] CORNERS = { 0, 0, 1, 0, 1, 1, 0, 1 };
+	/** The vertices of the two triangles of a cell. */
+	private static final int[] TRIANGLES = { 0, 1, 3, 2, 1, 3 };
+
+	private VertexFormat format;
+	private VertexBuffer vertices;
+	private int valuesPerCell;
+	private int indexHandle;
+	private int indexType;
+	private int cellsPerBatch;
 
 
 	public IndexGridMesh(float width, float height, int targetSize)
+	{
+		this(width, height, targetSize, VertexFormat.Default);
+	}
+
+
+	public IndexGridMesh(float width, float height, int targetSize, VertexFormat format)
+	{
+		this(width, height, targetSize, format, Gdx.gl30 == null);
+	}
+
+
+	/**
+	 * @param shortIndices If the grid should be drawn in batches with 16-bit
+	 *          indices, even if 32-bit indices are available.
+	 */
+	public IndexGridMesh(float width, float height, int targetSize, VertexFormat format, boolean shortIndices)
 	{
 		super(width, height, targetSize);
+		this.format = format;
+		valuesPerCell = VERTICES_PER_CELL * format.valuesPerVertex;
+		vertices = new VertexBuffer(format, getCellCount() * VERTICES_PER_CELL);
 		createCells();
-		createMesh();
+		vertices.upload();
+		createIndices(shortIndices);
 	}
 
 
 	private void createCells()
 	{
-		cells = new Cell[columns * rows];
-
-//		System.out.println(columnVertices + ", " + rowVertices + ", " + cellWidth + ", " + cellHeight);
+		FloatBuffer buffer = vertices.getVertices();
 
-		//Create cells.
 		for (int r = 0; r < rows; r++)
 		{
 			for (int c = 0; c < columns; c++)
 			{
-				int index = r*columns + c;
-				
 				float x = c * cellWidth;
 				float y = r * cellHeight;
-				
-				Cell cell = new Cell(x, y, cellWidth, cellHeight, Color.BLACK);
-				
-				cells[index] = cell;
+				int offset = getIndex(r, c) * valuesPerCell;
+
+				for (int j = 0; j < VERTICES_PER_CELL; j++)
+				{
+					int cornerX = CORNERS[j*2];
+					int cornerY = CORNERS[j*2 + 1];
+					format.write(x + cornerX * cellWidth, y + cornerY * cellHeight, cornerX, 1 - cornerY, Color.BLACK,
+							buffer, offset + j*format.valuesPerVertex);
+				}
 			}
 		}
-		
 
-		System.out.println("===CELLS: [" + columns + ", " + rows + "]=" + cells.length);
-//		System.out.println("===lower left: " + vertices[0].toString(true) + ", upper right: " + vertices[vertices.length-1].toString(true));
-//		printArray(vertices, columnVertices);
+		System.out.println("===CELLS: [" + columns + ", " + rows + "]=" + getCellCount());
 	}
-	
-	
-	private void createVertexArray()
+
+
+	private void createIndices(boolean useShortIndices)
 	{
-		int valuesPerCell = Cell.VERTICES_PER_CELL * Vertex.VALUES_PER_VERTEX;
-		vertexArray = new float[cells.length * valuesPerCell];
-		
-		for (int i = 0; i < cells.length; i++)
+		Buffer indices;
+		int size;
+
+		if (!useShortIndices)
 		{
-			Cell cell = cells[i];
-			int index = i * valuesPerCell;
-			
-			for (int j = 0; j < Cell.VERTICES_PER_CELL; j++)
-			{
-				int k = index + j*Vertex.VALUES_PER_VERTEX;
-				Vertex vertex = cell.getVertices()[j];
-				
-				vertexArray[k+0] = vertex.x;
-				vertexArray[k+1] = vertex.y;
-				vertexArray[k+2] = vertex.z;
-				vertexArray[k+3] = vertex.u;
-				vertexArray[k+4] = vertex.v;
-				vertexArray[k+5] = vertex.r;
-				vertexArray[k+6] = vertex.g;
-				vertexArray[k+7] = vertex.b;
-				vertexArray[k+8] = vertex.a;
-			}
+			cellsPerBatch = getCellCount();
+			indexType = GL20.GL_UNSIGNED_INT;
+			IntBuffer intIndices = BufferUtils.newIntBuffer(cellsPerBatch * INDICES_PER_CELL);
+			for (int i = 0; i < intIndices.capacity(); i++)
+				intIndices.put(i, getIndexedVertex(i));
+			indices = intIndices;
+			size = intIndices.capacity() * 4;
+		}
+		else
+		{
+			cellsPerBatch = Math.min(getCellCount(), CELLS_PER_BATCH);
+			indexType = GL20.GL_UNSIGNED_SHORT;
+			ShortBuffer shortIndices = BufferUtils.newShortBuffer(cellsPerBatch * INDICES_PER_CELL);
+			for (int i = 0; i < shortIndices.capacity(); i++)
+				shortIndices.put(i, (short) getIndexedVertex(i));
+			indices = shortIndices;
+			size = shortIndices.capacity() * 2;
 		}
+
+		indexHandle = Gdx.gl.glGenBuffer();
+		Gdx.gl.glBindBuffer(GL20.GL_ELEMENT_ARRAY_BUFFER, indexHandle);
+		Gdx.gl.glBufferData(GL20.GL_ELEMENT_ARRAY_BUFFER, size, indices, GL20.GL_STATIC_DRAW);
+		Gdx.gl.glBindBuffer(GL20.GL_ELEMENT_ARRAY_BUFFER, 0);
 	}
 
-	
-	private void createIndexArray()
+
+	/**
+	 * @return The vertex of the <code>n</code>th index. The indices of the vertices
+	 *         above 32767 are negative as shorts, but are read as unsigned.
+	 */
+	private static int getIndexedVertex(int n)
 	{
-		int indicesPerCell = Cell.TRIANGLES_PER_CELL * Triangle.INDICES_PER_TRIANGLE;
-		indexArray = new short[cells.length * indicesPerCell];
-		
-		for (int i = 0; i < cells.length; i++)
-		{
-			Cell cell = cells[i];
-			int index = i * indicesPerCell;
-			
-			for (int j = 0; j < Cell.TRIANGLES_PER_CELL; j++)
-			{
-				int k = index + j*Triangle.INDICES_PER_TRIANGLE;
-				Triangle triangle = cell.getTriangles()[j];
-				
-				indexArray[k+0] = (short) (triangle.vertex1+i*Cell.VERTICES_PER_CELL);
-				indexArray[k+1] = (short) (triangle.vertex2+i*Cell.VERTICES_PER_CELL);
-				indexArray[k+2] = (short) (triangle.vertex3+i*Cell.VERTICES_PER_CELL);
-			}
-		}
-		
-//		System.out.println("INDEX ARRAY");
-//		for (float f : indexArray)
-//		{
-//			System.out.print(f + ", ");
-//		}
-//		System.out.println();
+		int cell = n / INDICES_PER_CELL;
+		return TRIANGLES[n - cell * INDICES_PER_CELL] + cell * VERTICES_PER_CELL;
 	}
 
 
-	private void createMesh()
+	@Override
+	public void setColor(Color color, int index)
 	{
-		createVertexArray();
-		createIndexArray();
-		
-		System.out.println("Creating mesh...");
-		if (mesh == null)
-			mesh = new Mesh(false, true, vertexArray.length, indexArray.length, Vertex.VERTEX_ATTRIBUTES);
-		
-		mesh.setVertices(vertexArray);
-		mesh.setIndices(indexArray);
-		
-		System.out.println("Mesh created!");
-		
-//		System.out.println("Vertex objects: " + (cells.length * Cell.VERTICES_PER_CELL) + ", floats: " + vertexArray.length + ", in mesh: " + mesh.getNumVertices());
-//		System.out.println("Triangles: " + (cells.length * Cell.TRIANGLES_PER_CELL) + ", indices: " + indexArray.length + ", in mesh: "  + mesh.getNumIndices());
+		format.writeColor(color, vertices.getVertices(), index * valuesPerCell, VERTICES_PER_CELL);
+		markDirty(index);
 	}
-	
-	
-	public Mesh getMesh()
+
+
+	public void refreshMesh()
 	{
-		return mesh;
+		if (!hasDirtyCells())
+			return;
+
+		vertices.bind();
+		uploadDirtyCells();
+		vertices.unbind();
 	}
-	
-	
+
+
 	@Override
-	public void setColor(Color color, int index)
+	protected void uploadCells(int firstCell, int endCell)
 	{
-		cells[index].setColor(color);
-		//FIXME GridMesh3; After updating a cell, add it to a "dirty" list. When refreshMesh() is called, don't recreate the entire vertex array. Instead just locate the vertices of the dirty cells and update them (then call setVertices()).
+		int count = (endCell - firstCell) * valuesPerCell;
+		vertices.update(firstCell * valuesPerCell, count);
+		countUploadedBytes(count * 4L);
 	}
-	
-	
-	public void refreshMesh()
+
+
+	/**
+	 * Draws the grid with <code>shader</code>, which must have been begun.
+	 */
+	public void render(ShaderProgram shader)
 	{
-		createVertexArray();
-		mesh.setVertices(vertexArray);
+		for (int firstCell = 0; firstCell < getCellCount(); firstCell += cellsPerBatch)
+		{
+			int cells = Math.min(cellsPerBatch, getCellCount() - firstCell);
+			vertices.bind(shader, firstCell * VERTICES_PER_CELL);
+			Gdx.gl.glBindBuffer(GL20.GL_ELEMENT_ARRAY_BUFFER, indexHandle);
+			Gdx.gl.glDrawElements(GL20.GL_TRIANGLES, cells * INDICES_PER_CELL, indexType, 0);
+		}
+
+		Gdx.gl.glBindBuffer(GL20.GL_ELEMENT_ARRAY_BUFFER, 0);
+		vertices.unbind(shader);
 	}
-	
-	
+
+
+	/**
+	 * The indices are only stored on the GPU.
+	 */
+	@Override
+	public long getMemoryEstimate()
+	{
+		int bytesPerIndex = (indexType == GL20.GL_UNSIGNED_INT ? 4 : 2);
+		return super.getMemoryEstimate() + vertices.getMemoryEstimate() + (long) cellsPerBatch * INDICES_PER_CELL * bytesPerIndex;
+	}
+
+
 	@Override
 	public void dispose()
 	{
-		mesh.dispose();
+		vertices.dispose();
+		Gdx.gl.glDeleteBuffer(indexHandle);
 	}
 }
@@ -0,0 +1,99 @@
+package komposten.automata.backend.rendering;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.Texture;
+
+/**
+ * A texture with one texel per cell, holding the raw state of each cell packed
+ * into 32 bits instead of its colour. The state is mapped to a colour by a
+ * fragment shader when the texture is drawn (see
+ * {@link komposten.automata.backend.ShaderFactory#PREDATORPREY_STATE} and
+ * {@link komposten.automata.backend.ShaderFactory#EVOLUTION_STATE}).
+ */
+public class StateTexture extends AbstractMesh
+{
+	private static final int BYTES_PER_TEXEL = 4;
+	
+	private Pixmap pixmap;
+	private ByteBuffer pixels;
+	private Texture texture;
+
+
+	public StateTexture(int columns, int rows)
+	{
+		super(columns, rows, 1);
+		pixmap = new Pixmap(columns, rows, Format.RGBA8888);
+		pixels = pixmap.getPixels();
+		pixels.order(ByteOrder.BIG_ENDIAN);
+		texture = new Texture(pixmap);
+	}
+	
+	
+	/**
+	 * @param state The state of the cell, packed as <code>0xRRGGBBAA</code>.
+	 */
+	public void setState(int index, int state)
+	{
+		pixels.putInt(index * BYTES_PER_TEXEL, state);
+		markDirty(index);
+	}
+	
+	
+	@Override
+	public void setColor(Color color, int index)
+	{
+		setState(index, Color.rgba8888(color));
+	}
+	
+	
+	public Texture getTexture()
+	{
+		return texture;
+	}
+	
+	
+	public void refreshTexture()
+	{
+		if (!hasDirtyCells())
+			return;
+		
+		texture.bind();
+		uploadDirtyRows();
+	}
+	
+	
+	@Override
+	protected void uploadRows(int firstRow, int endRow)
+	{
+		pixels.position(firstRow * columns * BYTES_PER_TEXEL);
+		Gdx.gl.glTexSubImage2D(GL20.GL_TEXTURE_2D, 0, 0, firstRow, columns, endRow - firstRow,
+				pixmap.getGLFormat(), pixmap.getGLType(), pixels);
+		pixels.position(0);
+		countUploadedBytes((long) (endRow - firstRow) * columns * BYTES_PER_TEXEL);
+	}
+	
+	
+	/**
+	 * The pixels are kept both in the pixmap and in the texture.
+	 */
+	@Override
+	public long getMemoryEstimate()
+	{
+		return super.getMemoryEstimate() + (long) columns * rows * BYTES_PER_TEXEL * 2;
+	}
+	
+	
+	@Override
+	public void dispose()
+	{
+		pixmap.dispose();
+		texture.dispose();
+	}
+}
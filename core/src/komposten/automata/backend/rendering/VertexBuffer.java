@@ -0,0 +1,190 @@
+package komposten.automata.backend.rendering;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.BufferUtils;
+import com.badlogic.gdx.utils.Disposable;
+
+/**
+ * A vertex buffer object whose vertices live in one preallocated direct
+ * <code>FloatBuffer</code>. Meshes write their vertices straight into
+ * {@link #getVertices()} and upload the ranges they changed with
+ * {@link #update(int, int)}, so the vertices are not kept in a second array or
+ * copied on the CPU before they are uploaded.
+ * <p>
+ * With OpenGL 3 the attribute pointers are kept in a vertex array object, which
+ * is only set up again when the buffer is drawn with another shader or from
+ * another first vertex.
+ */
+public class VertexBuffer implements Disposable
+{
+	private VertexAttributes attributes;
+	private FloatBuffer vertices;
+	private int bufferHandle;
+	private int arrayHandle;
+	private ShaderProgram arrayShader;
+	private int arrayFirstVertex;
+	private int[] locations;
+
+
+	public VertexBuffer(VertexFormat format, int vertexCount)
+	{
+		attributes = format.attributes;
+		vertices = BufferUtils.newFloatBuffer(vertexCount * format.valuesPerVertex);
+		locations = new int[attributes.size()];
+		bufferHandle = Gdx.gl.glGenBuffer();
+
+		if (Gdx.gl30 != null)
+		{
+			IntBuffer handle = BufferUtils.newIntBuffer(1);
+			Gdx.gl30.glGenVertexArrays(1, handle);
+			arrayHandle = handle.get(0);
+		}
+	}
+
+
+	/**
+	 * @return The vertices. They should be written with absolute puts, and uploaded
+	 *         with {@link #upload()} or {@link #update(int, int)}.
+	 */
+	public FloatBuffer getVertices()
+	{
+		return vertices;
+	}
+
+
+	/**
+	 * Allocates the storage on the GPU and uploads all vertices.
+	 */
+	public void upload()
+	{
+		vertices.clear();
+		Gdx.gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, bufferHandle);
+		Gdx.gl.glBufferData(GL20.GL_ARRAY_BUFFER, vertices.capacity() * 4, vertices, GL20.GL_DYNAMIC_DRAW);
+		Gdx.gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, 0);
+	}
+
+
+	/**
+	 * Binds the buffer, so that ranges can be uploaded with
+	 * {@link #update(int, int)}.
+	 */
+	public void bind()
+	{
+		Gdx.gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, bufferHandle);
+	}
+
+
+	public void unbind()
+	{
+		Gdx.gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, 0);
+	}
+
+
+	/**
+	 * Uploads the values <code>[offset, offset + count)</code> to the (bound)
+	 * buffer.
+	 */
+	public void update(int offset, int count)
+	{
+		//The backends upload the remaining part of the buffer, so the range has to be selected with the position and limit.
+		vertices.limit(offset + count);
+		vertices.position(offset);
+		Gdx.gl.glBufferSubData(GL20.GL_ARRAY_BUFFER, offset * 4, count * 4, vertices);
+		vertices.clear();
+	}
+
+
+	/**
+	 * Binds the buffer and points the attributes of <code>shader</code>, which must
+	 * have been begun, at it.
+	 */
+	public void bind(ShaderProgram shader)
+	{
+		bind(shader, 0);
+	}
+
+
+	/**
+	 * Binds the buffer and points the attributes of <code>shader</code>, which must
+	 * have been begun, at it, so that vertex 0 in a draw call is vertex
+	 * <code>firstVertex</code> of the buffer. Can be called again without unbinding
+	 * to move to another part of the buffer.
+	 */
+	public void bind(ShaderProgram shader, int firstVertex)
+	{
+		if (arrayHandle != 0)
+		{
+			Gdx.gl30.glBindVertexArray(arrayHandle);
+			if (shader == arrayShader && firstVertex == arrayFirstVertex)
+				return;
+			arrayShader = shader;
+			arrayFirstVertex = firstVertex;
+		}
+
+		Gdx.gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, bufferHandle);
+
+		int offset = firstVertex * attributes.vertexSize;
+		for (int i = 0; i < attributes.size(); i++)
+		{
+			VertexAttribute attribute = attributes.get(i);
+			int location = shader.getAttributeLocation(attribute.alias);
+			locations[i] = location;
+			if (location < 0)
+				continue;
+
+			shader.enableVertexAttribute(location);
+			shader.setVertexAttribute(location, attribute.numComponents, attribute.type, attribute.normalized,
+					attributes.vertexSize, offset + attribute.offset);
+		}
+	}
+
+
+	public void unbind(ShaderProgram shader)
+	{
+		if (arrayHandle != 0)
+		{
+			Gdx.gl30.glBindVertexArray(0);
+		}
+		else
+		{
+			for (int location : locations)
+			{
+				if (location >= 0)
+					shader.disableVertexAttribute(location);
+			}
+		}
+
+		Gdx.gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, 0);
+	}
+
+
+	/**
+	 * @return The size of the vertices, which are kept both in the buffer and on
+	 *         the GPU, in bytes.
+	 */
+	public long getMemoryEstimate()
+	{
+		return vertices.capacity() * 4L * 2;
+	}
+
+
+	@Override
+	public void dispose()
+	{
+		Gdx.gl.glDeleteBuffer(bufferHandle);
+
+		if (arrayHandle != 0)
+		{
+			IntBuffer handle = BufferUtils.newIntBuffer(1);
+			handle.put(0, arrayHandle);
+			Gdx.gl30.glDeleteVertexArrays(1, handle);
+		}
+	}
+}
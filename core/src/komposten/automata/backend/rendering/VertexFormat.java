@@ -0,0 +1,94 @@
+package komposten.automata.backend.rendering;
+
+import java.nio.FloatBuffer;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+
+/**
+ * The vertex layouts that the grid meshes can be built with.
+ */
+public enum VertexFormat
+{
+	/**
+	 * 3D position, texture coordinates and unpacked colour (9 floats, 36 bytes).
+	 * Works with all shaders.
+	 */
+	Default(Vertex.VERTEX_ATTRIBUTES, Vertex.VALUES_PER_VERTEX),
+	/**
+	 * 2D position and packed colour (3 floats, 12 bytes). Should be drawn with
+	 * {@link komposten.automata.backend.ShaderFactory#COMPACT_COLOR}.
+	 */
+	Compact(new VertexAttributes(
+			new VertexAttribute(Usage.Position, 2, ShaderProgram.POSITION_ATTRIBUTE),
+			new VertexAttribute(Usage.ColorPacked, 4, ShaderProgram.COLOR_ATTRIBUTE)), 3);
+	
+	
+	public final VertexAttributes attributes;
+	public final int valuesPerVertex;
+	
+	
+	private VertexFormat(VertexAttributes attributes, int valuesPerVertex)
+	{
+		this.attributes = attributes;
+		this.valuesPerVertex = valuesPerVertex;
+	}
+	
+	
+	/**
+	 * Writes a vertex to <code>buffer</code>, starting at <code>offset</code>.
+	 */
+	public void write(float x, float y, float u, float v, Color color, FloatBuffer buffer, int offset)
+	{
+		switch (this)
+		{
+			case Default :
+				buffer.put(offset+0, x);
+				buffer.put(offset+1, y);
+				buffer.put(offset+2, 0);
+				buffer.put(offset+3, u);
+				buffer.put(offset+4, v);
+				buffer.put(offset+5, color.r);
+				buffer.put(offset+6, color.g);
+				buffer.put(offset+7, color.b);
+				buffer.put(offset+8, color.a);
+				break;
+			case Compact :
+				buffer.put(offset+0, x);
+				buffer.put(offset+1, y);
+				buffer.put(offset+2, color.toFloatBits());
+				break;
+		}
+	}
+	
+	
+	/**
+	 * Writes <code>color</code> to <code>count</code> consecutive vertices, the
+	 * first of which starts at <code>offset</code>.
+	 */
+	public void writeColor(Color color, FloatBuffer buffer, int offset, int count)
+	{
+		int end = offset + count * valuesPerVertex;
+		
+		switch (this)
+		{
+			case Default :
+				for (int k = offset; k < end; k += valuesPerVertex)
+				{
+					buffer.put(k+5, color.r);
+					buffer.put(k+6, color.g);
+					buffer.put(k+7, color.b);
+					buffer.put(k+8, color.a);
+				}
+				break;
+			case Compact :
+				float bits = color.toFloatBits();
+				for (int k = offset; k < end; k += valuesPerVertex)
+					buffer.put(k+2, bits);
+				break;
+		}
+	}
+}
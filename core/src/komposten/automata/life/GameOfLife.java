@@ -0,0 +1,71 @@
+package komposten.automata.life;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+
+import komposten.automata.GridAutomaton;
+import komposten.automata.backend.ShaderFactory;
+
+public class GameOfLife extends GridAutomaton
+{
+	public static final int CELL_SIZE = 2;
+
+	private static final int ALIVE_STATE = 0xFFFFFFFF;
+	private static final int DEAD_STATE = 0x000000FF;
+
+	private LifeSimulation simulation;
+
+
+	/**
+	 * @param columns The number of columns in the grid.
+	 * @param rows The number of rows in the grid.
+	 * @param width The width of the screen.
+	 * @param height The height of the screen.
+	 */
+	public GameOfLife(int columns, int rows, int width, int height, OrthographicCamera orthographicCamera)
+	{
+		super("GameOfLife", columns, rows, width, height, CELL_SIZE, Renderer.Pixmap, orthographicCamera);
+		simulation = new LifeSimulation(columns, rows);
+	}
+
+
+	@Override
+	public LifeSimulation getSimulation()
+	{
+		return simulation;
+	}
+
+
+	@Override
+	protected Color getCellColor(int index, Color color)
+	{
+		return color.set(simulation.isAlive(index) ? Color.WHITE : Color.BLACK);
+	}
+
+
+	/**
+	 * The states are the RGBA8888 colours of the cells, so the plain texture shader
+	 * can draw them.
+	 */
+	@Override
+	public String getStateShader()
+	{
+		return ShaderFactory.DEFAULT_TEXTURE;
+	}
+
+
+	@Override
+	public int getCellState(int index)
+	{
+		return (simulation.isAlive(index) ? ALIVE_STATE : DEAD_STATE);
+	}
+
+
+	@Override
+	public void renderText(BitmapFont font, SpriteBatch batch)
+	{
+		font.draw(batch, "Alive: " + simulation.getAliveCount(), 10, 20);
+	}
+}
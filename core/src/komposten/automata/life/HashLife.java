@@ -0,0 +1,125 @@
+package komposten.automata.life;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+
+import komposten.automata.GridAutomaton;
+import komposten.automata.backend.Metrics;
+import komposten.automata.backend.Metrics.Cache;
+import komposten.automata.backend.ShaderFactory;
+
+public class HashLife extends GridAutomaton
+{
+	public static final int CELL_SIZE = 2;
+
+	private static final int ALIVE_STATE = 0xFFFFFFFF;
+	private static final int DEAD_STATE = 0x000000FF;
+
+	private HashLifeSimulation simulation;
+	private NodeCache cache;
+	private long nodeLookups;
+	private long nodeHits;
+	private long resultLookups;
+	private long resultHits;
+
+
+	/**
+	 * @param columns The number of columns in the window.
+	 * @param rows The number of rows in the window.
+	 * @param width The width of the screen.
+	 * @param height The height of the screen.
+	 */
+	public HashLife(int columns, int rows, int width, int height, OrthographicCamera orthographicCamera)
+	{
+		super("HashLife", columns, rows, width, height, CELL_SIZE, Renderer.Pixmap, orthographicCamera);
+		simulation = new HashLifeSimulation(columns, rows);
+	}
+
+
+	@Override
+	public HashLifeSimulation getSimulation()
+	{
+		return simulation;
+	}
+
+
+	/**
+	 * Advances the simulation and records the cache lookups of the tick in the
+	 * metrics.
+	 */
+	@Override
+	public void update()
+	{
+		super.update();
+
+		NodeCache cache = simulation.getCache();
+		if (cache != this.cache)
+		{
+			//Restoring a checkpoint replaces the cache, and with it the lookup counters.
+			this.cache = cache;
+			nodeLookups = nodeHits = resultLookups = resultHits = 0;
+		}
+
+		Metrics metrics = getMetrics();
+		metrics.recordCacheLookups(Cache.Nodes, cache.getNodeHits() - nodeHits, cache.getNodeLookups() - nodeLookups);
+		metrics.recordCacheLookups(Cache.Results, cache.getResultHits() - resultHits, cache.getResultLookups() - resultLookups);
+		nodeLookups = cache.getNodeLookups();
+		nodeHits = cache.getNodeHits();
+		resultLookups = cache.getResultLookups();
+		resultHits = cache.getResultHits();
+	}
+
+
+	/**
+	 * Changes the number of generations per tick by a factor of
+	 * <code>2^change</code>.
+	 */
+	public void changeStepExponent(int change)
+	{
+		simulation.setStepExponent(simulation.getTargetStepExponent() + change);
+	}
+
+
+	@Override
+	protected Color getCellColor(int index, Color color)
+	{
+		return color.set(simulation.isAlive(index) ? Color.WHITE : Color.BLACK);
+	}
+
+
+	/**
+	 * The states are the RGBA8888 colours of the cells, so the plain texture shader
+	 * can draw them.
+	 */
+	@Override
+	public String getStateShader()
+	{
+		return ShaderFactory.DEFAULT_TEXTURE;
+	}
+
+
+	@Override
+	public int getCellState(int index)
+	{
+		return (simulation.isAlive(index) ? ALIVE_STATE : DEAD_STATE);
+	}
+
+
+	@Override
+	public void renderText(BitmapFont font, SpriteBatch batch)
+	{
+		NodeCache cache = simulation.getCache();
+		String generation = String.format("Generation: %d (2^%d per tick, %.3g generations/s)", simulation.getTicks(),
+				simulation.getStepExponent(), simulation.getGenerationsPerSecond());
+		if (simulation.getStepExponent() < simulation.getTargetStepExponent())
+			generation += " - lowered from 2^" + simulation.getTargetStepExponent() + " to fit the cache";
+		if (simulation.isAtLimit())
+			generation += " - stopped, the generation or the cell coordinates would overflow";
+		String population = "Alive: " + simulation.getPopulationTotal() + "   Nodes: " + cache.getSize() + " / "
+				+ cache.getCapacity() + " (" + cache.getCollectionCount() + " collections)";
+		font.draw(batch, generation, 10, 40);
+		font.draw(batch, population, 10, 20);
+	}
+}
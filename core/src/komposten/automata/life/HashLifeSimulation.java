@@ -0,0 +1,741 @@
+package komposten.automata.life;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.RandomXS128;
+
+import komposten.automata.backend.Simulation;
+import komposten.automata.life.NodeCache.CacheFullException;
+
+/**
+ * A Life-like rule computed with Gosper's HashLife algorithm. The grid is an
+ * unbounded quadtree of canonical nodes in a {@link NodeCache}, and the result of
+ * each node (its centre some generations later) is memoized, so repeated patterns
+ * in space and time are only computed once. Each tick advances
+ * <code>2^stepExponent</code> generations, which makes {@link #getTicks()} the
+ * generation rather than the number of updates.
+ * <p>
+ * The grid of the simulation is a window of <code>columns x rows</code> cells
+ * centred on the origin of the quadtree. Cells outside the window keep evolving,
+ * but are not shown.
+ */
+public class HashLifeSimulation extends Simulation
+{
+	public static final int ALIVE = 0;
+	public static final float DEFAULT_DENSITY = 0.3f;
+	public static final int DEFAULT_STEP_EXPONENT = 0;
+	/**
+	 * The largest step exponent. The root is expanded to at least two levels above
+	 * it in each step, which {@link #MAX_LEVEL} leaves room for.
+	 */
+	public static final int MAX_STEP_EXPONENT = 56;
+
+	/** The lowest level of the root, so the base case always has a parent. */
+	private static final int MIN_ROOT_LEVEL = 3;
+	/**
+	 * The highest level of a node. The root is at most one level lower, since it
+	 * is expanded once more in each step, so the coordinates of its cells and the
+	 * generations it takes a cell to cross it fit in a <code>long</code>. A step
+	 * that would need a larger root is not taken.
+	 */
+	private static final int MAX_LEVEL = 62;
+	/** Evict unreachable nodes before a step once the cache is this full. */
+	private static final float COLLECT_THRESHOLD = 0.75f;
+	/** Try a larger step again, if one was too large before, once the cache is less full than this. */
+	private static final float RAISE_THRESHOLD = 0.25f;
+
+	private LifeRule rule;
+	private float density;
+	private long seed;
+	private RandomXS128 random;
+
+	private NodeCache cache;
+	private int root;
+	private int[] emptyNodes;
+	/** The nine sub-nodes of {@link #getRecursiveResult(int, int)}, nine per level. */
+	private int[] subnodes;
+	private int stepExponent;
+	/** The step exponent that was asked for. It is lowered while the steps do not fit in the cache. */
+	private int targetStepExponent;
+	private long generations;
+	/** Set if the last step was not taken, since it would exceed {@link #MAX_LEVEL} or the generation counter. */
+	private boolean atLimit;
+
+	private int wordsPerRow;
+	private long[] window;
+	private long[] previousWindow;
+	private long minX;
+	private long minY;
+
+	private long measureStart;
+	private long measureGenerations;
+	private float generationsPerSecond;
+
+
+	public HashLifeSimulation(int columns, int rows)
+	{
+		this(columns, rows, LifeRule.CONWAY, DEFAULT_DENSITY, MathUtils.random.nextLong(), NodeCache.DEFAULT_CAPACITY);
+	}
+
+
+	/**
+	 * @param rule The rule in B/S notation.
+	 * @param density The fraction of the cells in the window that should be alive in
+	 *          the starting grid.
+	 * @param capacity The maximum number of nodes in the cache.
+	 */
+	public HashLifeSimulation(int columns, int rows, String rule, float density, long seed, int capacity)
+	{
+		super("HashLife", columns, rows, "Alive");
+
+		this.rule = new LifeRule(rule);
+		this.density = density;
+		this.seed = seed;
+		random = new RandomXS128(seed);
+		cache = new NodeCache(capacity);
+		emptyNodes = new int[MAX_LEVEL + 1];
+		subnodes = new int[(MAX_LEVEL + 1) * 9];
+		stepExponent = DEFAULT_STEP_EXPONENT;
+		targetStepExponent = DEFAULT_STEP_EXPONENT;
+
+		wordsPerRow = (columns + 63) >>> 6;
+		window = new long[wordsPerRow * rows];
+		previousWindow = new long[wordsPerRow * rows];
+		minX = -(columns / 2);
+		minY = -(rows / 2);
+
+		createStartingGrid();
+	}
+
+
+	@Override
+	protected void createStartingGrid()
+	{
+		int threshold = (int) (density * 1000);
+
+		for (int r = 0; r < getRowCount(); r++)
+		{
+			for (int c = 0; c < getColumnCount(); c++)
+			{
+				if (random.nextInt(1000) < threshold)
+					window[r * wordsPerRow + (c >>> 6)] |= 1L << c;
+			}
+		}
+
+		int level = MIN_ROOT_LEVEL;
+		while ((1L << (level - 1)) < Math.max(-minX, getColumnCount() + minX)
+				|| (1L << (level - 1)) < Math.max(-minY, getRowCount() + minY))
+			level++;
+
+		resetEmptyNodes();
+		root = build(level, -(1L << (level - 1)), -(1L << (level - 1)));
+		populations[ALIVE] = getClampedPopulation();
+		getChangedCells().set(0, getCellCount());
+	}
+
+
+	/**
+	 * Builds the node at the specified level and top-left corner from the cells in
+	 * the window.
+	 */
+	private int build(int level, long x, long y)
+	{
+		if (!intersectsWindow(level, x, y))
+			return getEmptyNode(level);
+
+		if (level == 0)
+		{
+			int c = (int) (x - minX);
+			int r = (int) (y - minY);
+			return ((window[r * wordsPerRow + (c >>> 6)] & (1L << c)) != 0 ? NodeCache.ALIVE : NodeCache.DEAD);
+		}
+
+		long half = 1L << (level - 1);
+		return cache.join(build(level - 1, x, y), build(level - 1, x + half, y),
+				build(level - 1, x, y + half), build(level - 1, x + half, y + half));
+	}
+
+
+	private boolean intersectsWindow(int level, long x, long y)
+	{
+		long size = 1L << level;
+		return x < minX + getColumnCount() && x + size > minX && y < minY + getRowCount() && y + size > minY;
+	}
+
+
+	public LifeRule getRule()
+	{
+		return rule;
+	}
+
+
+	public long getSeed()
+	{
+		return seed;
+	}
+
+
+	/**
+	 * @return The current generation.
+	 */
+	@Override
+	public long getTicks()
+	{
+		return generations;
+	}
+
+
+	/**
+	 * @return The step exponent of the next tick, which is lower than
+	 *         {@link #getTargetStepExponent()} while the steps do not fit in the
+	 *         cache.
+	 */
+	public int getStepExponent()
+	{
+		return stepExponent;
+	}
+
+
+	public int getTargetStepExponent()
+	{
+		return targetStepExponent;
+	}
+
+
+	/**
+	 * Sets how many generations each tick advances, as a power of two. If a step
+	 * does not fit in the cache, the exponent is lowered until it does, and raised
+	 * again towards this one once the cache has room.
+	 */
+	public void setStepExponent(int stepExponent)
+	{
+		targetStepExponent = MathUtils.clamp(stepExponent, 0, MAX_STEP_EXPONENT);
+		changeStepExponent(targetStepExponent);
+	}
+
+
+	/**
+	 * Changes the current step exponent and forgets the memoized results that depend
+	 * on it.
+	 */
+	private void changeStepExponent(int stepExponent)
+	{
+		if (stepExponent == this.stepExponent)
+			return;
+
+		//A node at level n advances 2^min(stepExponent, n-2) generations, so nodes at or below the smaller exponent + 2 are unaffected.
+		cache.clearResults(Math.min(stepExponent, this.stepExponent) + 2);
+		this.stepExponent = stepExponent;
+	}
+
+
+	public NodeCache getCache()
+	{
+		return cache;
+	}
+
+
+	/**
+	 * @return The number of living cells, including those outside the window.
+	 */
+	public long getPopulationTotal()
+	{
+		return cache.getPopulation(root);
+	}
+
+
+	private int getClampedPopulation()
+	{
+		return (int) Math.min(cache.getPopulation(root), Integer.MAX_VALUE);
+	}
+
+
+	/**
+	 * @return <code>true</code> if the last tick did not advance, since the cells
+	 *         have spread too far or the generation would overflow.
+	 */
+	public boolean isAtLimit()
+	{
+		return atLimit;
+	}
+
+
+	/**
+	 * @return The number of generations per second, measured over the last second
+	 *         of ticks.
+	 */
+	public float getGenerationsPerSecond()
+	{
+		return generationsPerSecond;
+	}
+
+
+	public boolean isAlive(int index)
+	{
+		int column = getColumn(index);
+		return (window[getRow(index) * wordsPerRow + (column >>> 6)] & (1L << column)) != 0;
+	}
+
+
+	@Override
+	protected void step()
+	{
+		long start = System.nanoTime();
+
+		if (cache.getSize() > cache.getCapacity() * COLLECT_THRESHOLD)
+			collect();
+
+		if (stepExponent < targetStepExponent && cache.getSize() < cache.getCapacity() * RAISE_THRESHOLD)
+			changeStepExponent(stepExponent + 1);
+
+		atLimit = (Long.MAX_VALUE - generations < 1L << stepExponent);
+		if (atLimit)
+			return;
+
+		//Nothing can be collected in the middle of a step, since the recursion holds node indices, so a step that fills the cache is restarted.
+		for (int attempt = 0; !tryAdvance(); attempt++)
+		{
+			//If the step does not fit in a collected cache either, a smaller step needs fewer intermediate nodes. Each failed attempt fills the cache, so the exponent is halved rather than decremented, and raised one at a time later.
+			if (attempt > 0)
+			{
+				if (stepExponent == 0)
+					throw new IllegalStateException("The pattern is too large for a cache of " + cache.getCapacity() + " nodes!");
+				changeStepExponent(stepExponent / 2);
+			}
+
+			collect();
+		}
+
+		populations[ALIVE] = getClampedPopulation();
+		refreshWindow();
+		measureSpeed(start);
+	}
+
+
+	private void collect()
+	{
+		root = cache.collect(root);
+		resetEmptyNodes();
+	}
+
+
+	/**
+	 * Advances the root by <code>2^stepExponent</code> generations, unless that
+	 * needs a node above {@link #MAX_LEVEL}, in which case {@link #atLimit} is set.
+	 *
+	 * @return <code>false</code> if the cache filled up, in which case the root is
+	 *         unchanged.
+	 */
+	private boolean tryAdvance()
+	{
+		try
+		{
+			int node = root;
+
+			while (cache.getLevel(node) > Math.max(MIN_ROOT_LEVEL, stepExponent + 2) && isCentred(node))
+				node = getCentre(node);
+
+			//The result is the centre half of the node. With the cells inside the centre half before expanding, they are at least 2^stepExponent cells from the edge of the result, so no cell can escape it.
+			while (cache.getLevel(node) < stepExponent + 2 || !isCentred(node))
+			{
+				if (cache.getLevel(node) >= MAX_LEVEL - 1)
+				{
+					atLimit = true;
+					return true;
+				}
+				node = expand(node);
+			}
+			node = expand(node);
+
+			root = getResult(node);
+			generations += 1L << stepExponent;
+			return true;
+		}
+		catch (CacheFullException e)
+		{
+			return false;
+		}
+	}
+
+
+	/**
+	 * @return <code>true</code> if all living cells of the node are in the centre
+	 *         half.
+	 */
+	private boolean isCentred(int node)
+	{
+		int nw = cache.getChild(node, NodeCache.NW);
+		int ne = cache.getChild(node, NodeCache.NE);
+		int sw = cache.getChild(node, NodeCache.SW);
+		int se = cache.getChild(node, NodeCache.SE);
+
+		long centre = cache.getPopulation(cache.getChild(nw, NodeCache.SE))
+				+ cache.getPopulation(cache.getChild(ne, NodeCache.SW))
+				+ cache.getPopulation(cache.getChild(sw, NodeCache.NE))
+				+ cache.getPopulation(cache.getChild(se, NodeCache.NW));
+		return centre == cache.getPopulation(node);
+	}
+
+
+	/**
+	 * @return A node one level higher, with <code>node</code> in the centre.
+	 */
+	private int expand(int node)
+	{
+		int empty = getEmptyNode(cache.getLevel(node) - 1);
+		int nw = cache.join(empty, empty, empty, cache.getChild(node, NodeCache.NW));
+		int ne = cache.join(empty, empty, cache.getChild(node, NodeCache.NE), empty);
+		int sw = cache.join(empty, cache.getChild(node, NodeCache.SW), empty, empty);
+		int se = cache.join(cache.getChild(node, NodeCache.SE), empty, empty, empty);
+		return cache.join(nw, ne, sw, se);
+	}
+
+
+	/**
+	 * @return The centre half of the node, one level lower.
+	 */
+	private int getCentre(int node)
+	{
+		return cache.join(cache.getChild(cache.getChild(node, NodeCache.NW), NodeCache.SE),
+				cache.getChild(cache.getChild(node, NodeCache.NE), NodeCache.SW),
+				cache.getChild(cache.getChild(node, NodeCache.SW), NodeCache.NE),
+				cache.getChild(cache.getChild(node, NodeCache.SE), NodeCache.NW));
+	}
+
+
+	/**
+	 * @return The centre half of two horizontally adjacent nodes.
+	 */
+	private int getHorizontalCentre(int west, int east)
+	{
+		return cache.join(cache.getChild(west, NodeCache.NE), cache.getChild(east, NodeCache.NW),
+				cache.getChild(west, NodeCache.SE), cache.getChild(east, NodeCache.SW));
+	}
+
+
+	/**
+	 * @return The centre half of two vertically adjacent nodes.
+	 */
+	private int getVerticalCentre(int north, int south)
+	{
+		return cache.join(cache.getChild(north, NodeCache.SW), cache.getChild(north, NodeCache.SE),
+				cache.getChild(south, NodeCache.NW), cache.getChild(south, NodeCache.NE));
+	}
+
+
+	private void resetEmptyNodes()
+	{
+		Arrays.fill(emptyNodes, -1);
+		emptyNodes[0] = NodeCache.DEAD;
+	}
+
+
+	private int getEmptyNode(int level)
+	{
+		if (emptyNodes[level] < 0)
+		{
+			int child = getEmptyNode(level - 1);
+			emptyNodes[level] = cache.join(child, child, child, child);
+		}
+
+		return emptyNodes[level];
+	}
+
+
+	/**
+	 * @return The centre half of the node (at level <code>n</code>), advanced
+	 *         <code>2^min(stepExponent, n-2)</code> generations.
+	 */
+	private int getResult(int node)
+	{
+		int result = cache.getResult(node);
+		if (result >= 0)
+			return result;
+
+		int level = cache.getLevel(node);
+		if (cache.getPopulation(node) == 0)
+			result = getEmptyNode(level - 1);
+		else if (level == 2)
+			result = getBaseResult(node);
+		else
+			result = getRecursiveResult(node, level);
+
+		cache.setResult(node, result);
+		return result;
+	}
+
+
+	/**
+	 * Splits the node into nine overlapping sub-nodes one level lower, advances
+	 * those, and then advances the four overlapping quarters of the result again.
+	 * Below full speed, the first advance only takes the centres of the sub-nodes.
+	 */
+	private int getRecursiveResult(int node, int level)
+	{
+		int nw = cache.getChild(node, NodeCache.NW);
+		int ne = cache.getChild(node, NodeCache.NE);
+		int sw = cache.getChild(node, NodeCache.SW);
+		int se = cache.getChild(node, NodeCache.SE);
+
+		//The recursion only goes to lower levels, so each level can reuse its own nine entries.
+		int[] nodes = subnodes;
+		int i = level * 9;
+		nodes[i] = nw;
+		nodes[i+1] = getHorizontalCentre(nw, ne);
+		nodes[i+2] = ne;
+		nodes[i+3] = getVerticalCentre(nw, sw);
+		nodes[i+4] = getCentre(node);
+		nodes[i+5] = getVerticalCentre(ne, se);
+		nodes[i+6] = sw;
+		nodes[i+7] = getHorizontalCentre(sw, se);
+		nodes[i+8] = se;
+
+		boolean fullSpeed = (stepExponent >= level - 2);
+		for (int j = i; j < i + 9; j++)
+			nodes[j] = (fullSpeed ? getResult(nodes[j]) : getCentre(nodes[j]));
+
+		return cache.join(
+				getResult(cache.join(nodes[i], nodes[i+1], nodes[i+3], nodes[i+4])),
+				getResult(cache.join(nodes[i+1], nodes[i+2], nodes[i+4], nodes[i+5])),
+				getResult(cache.join(nodes[i+3], nodes[i+4], nodes[i+6], nodes[i+7])),
+				getResult(cache.join(nodes[i+4], nodes[i+5], nodes[i+7], nodes[i+8])));
+	}
+
+
+	/**
+	 * @return The centre 2x2 cells of a 4x4 node, one generation later.
+	 */
+	private int getBaseResult(int node)
+	{
+		//Bit (y * 4 + x) is the cell at column x and row y.
+		int cells = 0;
+		for (int quadrant = 0; quadrant < 4; quadrant++)
+		{
+			int child = cache.getChild(node, quadrant);
+			int x = (quadrant & 1) * 2;
+			int y = (quadrant >> 1) * 2;
+
+			for (int i = 0; i < 4; i++)
+			{
+				if (cache.getChild(child, i) == NodeCache.ALIVE)
+					cells |= 1 << ((y + (i >> 1)) * 4 + x + (i & 1));
+			}
+		}
+
+		return cache.join(getNextCell(cells, 1, 1), getNextCell(cells, 2, 1), getNextCell(cells, 1, 2),
+				getNextCell(cells, 2, 2));
+	}
+
+
+	private int getNextCell(int cells, int x, int y)
+	{
+		int neighbours = 0;
+		for (int dy = -1; dy <= 1; dy++)
+		{
+			for (int dx = -1; dx <= 1; dx++)
+			{
+				if ((dx != 0 || dy != 0) && (cells & (1 << ((y + dy) * 4 + x + dx))) != 0)
+					neighbours++;
+			}
+		}
+
+		boolean alive = (cells & (1 << (y * 4 + x))) != 0;
+		return (rule.isAlive(alive, neighbours) ? NodeCache.ALIVE : NodeCache.DEAD);
+	}
+
+
+	/**
+	 * Copies the cells in the window from the quadtree and marks the ones that
+	 * changed, as spans of each word like {@link LifeSimulation} does.
+	 */
+	private void refreshWindow()
+	{
+		long[] previous = previousWindow;
+		previousWindow = window;
+		window = previous;
+		Arrays.fill(window, 0);
+
+		int level = cache.getLevel(root);
+		readWindow(root, level, -(1L << (level - 1)), -(1L << (level - 1)));
+
+		int columns = getColumnCount();
+		for (int r = 0; r < getRowCount(); r++)
+		{
+			for (int w = 0; w < wordsPerRow; w++)
+			{
+				long changed = window[r * wordsPerRow + w] ^ previousWindow[r * wordsPerRow + w];
+				if (changed != 0)
+				{
+					int firstIndex = r * columns + (w << 6);
+					getChangedCells().set(firstIndex + Long.numberOfTrailingZeros(changed),
+							firstIndex + 64 - Long.numberOfLeadingZeros(changed));
+				}
+			}
+		}
+	}
+
+
+	private void readWindow(int node, int level, long x, long y)
+	{
+		if (cache.getPopulation(node) == 0 || !intersectsWindow(level, x, y))
+			return;
+
+		if (level == 0)
+		{
+			int c = (int) (x - minX);
+			int r = (int) (y - minY);
+			window[r * wordsPerRow + (c >>> 6)] |= 1L << c;
+			return;
+		}
+
+		long half = 1L << (level - 1);
+		readWindow(cache.getChild(node, NodeCache.NW), level - 1, x, y);
+		readWindow(cache.getChild(node, NodeCache.NE), level - 1, x + half, y);
+		readWindow(cache.getChild(node, NodeCache.SW), level - 1, x, y + half);
+		readWindow(cache.getChild(node, NodeCache.SE), level - 1, x + half, y + half);
+	}
+
+
+	private void measureSpeed(long tickStart)
+	{
+		if (measureStart == 0)
+			measureStart = tickStart;
+
+		measureGenerations += 1L << stepExponent;
+
+		long now = System.nanoTime();
+		if (now - measureStart >= 1E9)
+		{
+			generationsPerSecond = (float) (measureGenerations / ((now - measureStart) / 1E9));
+			measureGenerations = 0;
+			measureStart = now;
+		}
+	}
+
+
+	/**
+	 * Estimated from the arrays of the cache rather than from the state, since
+	 * {@link #getStateSize()} collects the cache.
+	 */
+	@Override
+	public long getMemoryEstimate()
+	{
+		return cache.getMemoryEstimate() + (window.length + previousWindow.length) * 8L + getCellCount() / 8
+				+ getPopulationHistory().getMemoryEstimate();
+	}
+
+
+	/**
+	 * The state is the generation, the requested step exponent and the nodes that can be
+	 * reached from the root, children first, as the indices of their four children.
+	 */
+	@Override
+	protected int getStateSize()
+	{
+		root = cache.collect(root);
+		resetEmptyNodes();
+		return super.getStateSize() + 8 + 4 + 4 + (cache.getSize() - 2) * 16;
+	}
+
+
+	/**
+	 * {@link #getStateSize()} has collected the cache, so the nodes are exactly
+	 * <code>[2, size)</code>, with the root last.
+	 */
+	@Override
+	protected void writeState(ByteBuffer buffer)
+	{
+		super.writeState(buffer);
+		buffer.putLong(generations);
+		buffer.putInt(targetStepExponent);
+		buffer.putInt(cache.getSize() - 2);
+
+		for (int node = 2; node < cache.getSize(); node++)
+		{
+			for (int quadrant = 0; quadrant < 4; quadrant++)
+				buffer.putInt(cache.getChild(node, quadrant));
+		}
+	}
+
+
+	@Override
+	protected Runnable readState(ByteBuffer buffer) throws IOException
+	{
+		final Runnable superState = super.readState(buffer);
+		final long generations = buffer.getLong();
+		final int stepExponent = buffer.getInt();
+		int nodeCount = buffer.getInt();
+
+		if (generations < 0)
+			throw new IOException("Invalid generation: " + generations);
+		if (stepExponent < 0 || stepExponent > MAX_STEP_EXPONENT)
+			throw new IOException("Invalid step exponent: " + stepExponent);
+		if (nodeCount < 1 || nodeCount > cache.getCapacity() - 2)
+			throw new IOException("Invalid node count: " + nodeCount);
+
+		//The nodes are read into a new cache, so that the current one is left intact if they are invalid.
+		final NodeCache nodes = new NodeCache(cache.getCapacity());
+
+		//The nodes were written in order, so they get the same indices again.
+		int node = NodeCache.ALIVE;
+		for (int i = 0; i < nodeCount; i++)
+		{
+			int nw = buffer.getInt();
+			int ne = buffer.getInt();
+			int sw = buffer.getInt();
+			int se = buffer.getInt();
+
+			if (!isValidChildren(nodes, nw, ne, sw, se))
+				throw new IOException("Invalid children of node " + (i + 2) + "!");
+
+			node = nodes.join(nw, ne, sw, se);
+			if (node != i + 2)
+				throw new IOException("Node " + (i + 2) + " is a duplicate of node " + node + "!");
+		}
+
+		if (nodes.getLevel(node) < MIN_ROOT_LEVEL || nodes.getLevel(node) > MAX_LEVEL - 1)
+			throw new IOException("Invalid root level: " + nodes.getLevel(node));
+
+		final int newRoot = node;
+		return new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				superState.run();
+				HashLifeSimulation.this.generations = generations;
+				HashLifeSimulation.this.stepExponent = stepExponent;
+				targetStepExponent = stepExponent;
+				atLimit = false;
+				cache = nodes;
+				root = newRoot;
+				resetEmptyNodes();
+
+				Arrays.fill(window, 0);
+				refreshWindow();
+				getChangedCells().set(0, getCellCount());
+			}
+		};
+	}
+
+
+	/**
+	 * @return <code>true</code> if the children are nodes that already exist in
+	 *         <code>nodes</code>, and all have the same level, which is below the
+	 *         level of the largest root.
+	 */
+	private boolean isValidChildren(NodeCache nodes, int nw, int ne, int sw, int se)
+	{
+		int size = nodes.getSize();
+		if (nw < 0 || ne < 0 || sw < 0 || se < 0 || nw >= size || ne >= size || sw >= size || se >= size)
+			return false;
+
+		int level = nodes.getLevel(nw);
+		if (level >= MAX_LEVEL - 1)
+			return false;
+		return nodes.getLevel(ne) == level && nodes.getLevel(sw) == level && nodes.getLevel(se) == level;
+	}
+}
@@ -0,0 +1,75 @@
+package komposten.automata.life;
+
+/**
+ * A Life-like rule in B/S notation, such as <code>B3/S23</code> for Conway's Game
+ * of Life or <code>B36/S23</code> for HighLife. The neighbour counts are stored as
+ * bit masks, with bit <code>n</code> set if a count of <code>n</code> living
+ * neighbours gives birth to a dead cell or lets a living cell survive.
+ */
+public class LifeRule
+{
+	public static final String CONWAY = "B3/S23";
+
+	private String notation;
+	private int birth;
+	private int survive;
+
+
+	/**
+	 * @throws IllegalArgumentException If the rule is not in B/S notation.
+	 */
+	public LifeRule(String notation)
+	{
+		String[] parts = notation.toUpperCase().split("/");
+		if (parts.length != 2 || !parts[0].startsWith("B") || !parts[1].startsWith("S"))
+			throw new IllegalArgumentException("Invalid rule (expected B.../S...): " + notation);
+
+		this.notation = notation;
+		birth = parseCounts(parts[0].substring(1), notation);
+		survive = parseCounts(parts[1].substring(1), notation);
+	}
+
+
+	private static int parseCounts(String counts, String notation)
+	{
+		int result = 0;
+
+		for (int i = 0; i < counts.length(); i++)
+		{
+			int count = counts.charAt(i) - '0';
+			if (count < 0 || count > 8)
+				throw new IllegalArgumentException("Invalid neighbour count in rule: " + notation);
+			result |= 1 << count;
+		}
+
+		return result;
+	}
+
+
+	public String getNotation()
+	{
+		return notation;
+	}
+
+
+	public boolean isBirth(int neighbours)
+	{
+		return (birth & (1 << neighbours)) != 0;
+	}
+
+
+	public boolean isSurvival(int neighbours)
+	{
+		return (survive & (1 << neighbours)) != 0;
+	}
+
+
+	/**
+	 * @return <code>true</code> if a cell with the specified number of living
+	 *         neighbours is alive in the next generation.
+	 */
+	public boolean isAlive(boolean alive, int neighbours)
+	{
+		return (alive ? isSurvival(neighbours) : isBirth(neighbours));
+	}
+}
@@ -0,0 +1,326 @@
+package komposten.automata.life;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import komposten.automata.backend.TiledSimulation;
+import komposten.automata.backend.TileScheduler.Worker;
+
+/**
+ * Conway's Game of Life, or another Life-like rule, with the cells stored as one
+ * bit each in <code>long</code> words. Each row starts at a new word, and bit
+ * <code>i</code> of word <code>w</code> is column <code>w * 64 + i</code>. Cells
+ * outside the grid are always dead, and the rows are padded with an empty row
+ * above and below the grid so that the rows next to the edges need no checks.
+ * <p>
+ * A tick computes the next generation of 64 cells at a time: the eight
+ * neighbours of each cell are shifted into place and summed with bitwise full
+ * adders into a 4-bit count per cell, which is then matched against the rule.
+ * The generations are double-buffered, so the rows can be updated in any order.
+ */
+public class LifeSimulation extends TiledSimulation
+{
+	public static final int ALIVE = 0;
+	public static final String DEFAULT_RULE = LifeRule.CONWAY;
+	public static final float DEFAULT_DENSITY = 0.3f;
+
+	private float density;
+	private int wordsPerRow;
+	private long[] cells;
+	private long[] nextCells;
+
+	/*
+	 * RULE_STRIDE values per neighbour count that makes a cell alive: the four bits
+	 * of the count, each as all zeroes or all ones, followed by a survive and a birth
+	 * mask, which are all ones if a living cell survives, or a dead cell is born,
+	 * with that count.
+	 */
+	private static final int RULE_STRIDE = 6;
+	private long[] rule;
+
+
+	public LifeSimulation(int columns, int rows)
+	{
+		this(columns, rows, DEFAULT_DENSITY);
+	}
+
+
+	/**
+	 * @param density The fraction of the cells that should be alive in the starting
+	 *          grid.
+	 */
+	public LifeSimulation(int columns, int rows, float density)
+	{
+		this(columns, rows, density, createSeed());
+	}
+
+
+	public LifeSimulation(int columns, int rows, float density, long seed)
+	{
+		this(columns, rows, DEFAULT_RULE, density, seed);
+	}
+
+
+	/**
+	 * @param rule The rule in B/S notation, such as <code>B3/S23</code> for
+	 *          Conway's Game of Life or <code>B36/S23</code> for HighLife.
+	 */
+	public LifeSimulation(int columns, int rows, String rule, float density, long seed)
+	{
+		super("GameOfLife", columns, rows, 1, seed, "Alive");
+
+		this.density = density;
+		wordsPerRow = (columns + 63) >>> 6;
+		cells = new long[wordsPerRow * (rows + 2)];
+		nextCells = new long[wordsPerRow * (rows + 2)];
+		setRule(new LifeRule(rule));
+
+		createStartingGrid();
+	}
+
+
+	private void setRule(LifeRule rule)
+	{
+		int entries = 0;
+		for (int count = 0; count <= 8; count++)
+		{
+			if (rule.isBirth(count) || rule.isSurvival(count))
+				entries++;
+		}
+
+		this.rule = new long[entries * RULE_STRIDE];
+
+		int i = 0;
+		for (int count = 0; count <= 8; count++)
+		{
+			if (!rule.isBirth(count) && !rule.isSurvival(count))
+				continue;
+
+			for (int bit = 0; bit < 4; bit++)
+				this.rule[i++] = ((count >> bit) & 1) != 0 ? -1L : 0;
+			this.rule[i++] = (rule.isSurvival(count) ? -1L : 0);
+			this.rule[i++] = (rule.isBirth(count) ? -1L : 0);
+		}
+	}
+
+
+	@Override
+	protected void createStartingGrid()
+	{
+		int threshold = (int) (density * 1000);
+
+		for (int r = 0; r < getRowCount(); r++)
+		{
+			for (int c = 0; c < getColumnCount(); c++)
+			{
+				if (random.nextInt(1000) < threshold)
+				{
+					cells[getWordIndex(r, c)] |= 1L << c;
+					populations[ALIVE]++;
+				}
+			}
+		}
+
+		getChangedCells().set(0, getCellCount());
+	}
+
+
+	/**
+	 * @return The index of the word that holds the cell.
+	 */
+	private int getWordIndex(int row, int column)
+	{
+		return (row + 1) * wordsPerRow + (column >>> 6);
+	}
+
+
+	public boolean isAlive(int index)
+	{
+		int column = getColumn(index);
+		return (cells[getWordIndex(getRow(index), column)] & (1L << column)) != 0;
+	}
+
+
+	public int getAliveCount()
+	{
+		return populations[ALIVE];
+	}
+
+
+	@Override
+	protected void step()
+	{
+		super.step();
+
+		long[] previous = cells;
+		cells = nextCells;
+		nextCells = previous;
+	}
+
+
+	/**
+	 * Computes the next generation of the cells in the tile into
+	 * <code>nextCells</code>. The tiles do not start and end on word boundaries, so
+	 * the first and last word of each row are masked. A word can therefore be
+	 * written by two tiles, but those are always in different phases.
+	 * <p>
+	 * Visiting the changed cells one by one costs more than computing them, so the
+	 * span from the first to the last changed cell of each word is marked instead.
+	 * The unchanged cells in that span are redrawn or re-recorded with the state
+	 * they already had.
+	 */
+	@Override
+	public void updateTile(Worker worker, int firstRow, int endRow, int firstColumn, int endColumn)
+	{
+		int columns = getColumnCount();
+		int firstWord = firstColumn >>> 6;
+		int lastWord = (endColumn - 1) >>> 6;
+		long firstMask = -1L << firstColumn;
+		long lastMask = -1L >>> (63 - ((endColumn - 1) & 63));
+		long[] cells = this.cells;
+		long[] nextCells = this.nextCells;
+		int alive = 0;
+
+		for (int r = firstRow; r < endRow; r++)
+		{
+			int row = getWordIndex(r, 0);
+			int above = row - wordsPerRow;
+			int below = row + wordsPerRow;
+
+			//A window of three words from each of the three rows, moved one word to the right each step.
+			long upperLeft = (firstWord > 0 ? cells[above + firstWord - 1] : 0);
+			long upper = cells[above + firstWord];
+			long middleLeft = (firstWord > 0 ? cells[row + firstWord - 1] : 0);
+			long middle = cells[row + firstWord];
+			long lowerLeft = (firstWord > 0 ? cells[below + firstWord - 1] : 0);
+			long lower = cells[below + firstWord];
+
+			for (int w = firstWord; w <= lastWord; w++)
+			{
+				boolean hasRight = (w + 1 < wordsPerRow);
+				long upperRight = (hasRight ? cells[above + w + 1] : 0);
+				long middleRight = (hasRight ? cells[row + w + 1] : 0);
+				long lowerRight = (hasRight ? cells[below + w + 1] : 0);
+
+				long mask = -1L;
+				if (w == firstWord)
+					mask &= firstMask;
+				if (w == lastWord)
+					mask &= lastMask;
+
+				long next = getNextGeneration(upperLeft, upper, upperRight, middleLeft, middle, middleRight,
+						lowerLeft, lower, lowerRight) & mask;
+				long changed = (next ^ middle) & mask;
+
+				nextCells[row + w] = (nextCells[row + w] & ~mask) | next;
+				alive += Long.bitCount(next);
+
+				if (changed != 0)
+				{
+					int firstIndex = r * columns + (w << 6);
+					worker.markChanged(firstIndex + Long.numberOfTrailingZeros(changed),
+							firstIndex + 64 - Long.numberOfLeadingZeros(changed));
+				}
+
+				upperLeft = upper;
+				upper = upperRight;
+				middleLeft = middle;
+				middle = middleRight;
+				lowerLeft = lower;
+				lower = lowerRight;
+			}
+		}
+
+		worker.populations[ALIVE] += alive;
+	}
+
+
+	/**
+	 * @return The next generation of the 64 cells in <code>middle</code>, given the
+	 *         words to the left and right of it and the rows above and below.
+	 */
+	private long getNextGeneration(long upperLeftWord, long upperWord, long upperRightWord, long middleLeftWord,
+			long middle, long middleRightWord, long lowerLeftWord, long lowerWord, long lowerRightWord)
+	{
+		long upperLeft = (upperWord << 1) | (upperLeftWord >>> 63);
+		long upperRight = (upperWord >>> 1) | (upperRightWord << 63);
+		long left = (middle << 1) | (middleLeftWord >>> 63);
+		long right = (middle >>> 1) | (middleRightWord << 63);
+		long lowerLeft = (lowerWord << 1) | (lowerLeftWord >>> 63);
+		long lowerRight = (lowerWord >>> 1) | (lowerRightWord << 63);
+
+		//Full adders for the rows above and below, and a half adder for the middle row.
+		long upperOnes = upperLeft ^ upperWord ^ upperRight;
+		long upperTwos = (upperLeft & upperWord) | (upperRight & (upperLeft ^ upperWord));
+		long lowerOnes = lowerLeft ^ lowerWord ^ lowerRight;
+		long lowerTwos = (lowerLeft & lowerWord) | (lowerRight & (lowerLeft ^ lowerWord));
+		long middleOnes = left ^ right;
+		long middleTwos = left & right;
+
+		//Sum the ones into bit 0 of the count, carrying into the twos.
+		long bit0 = upperOnes ^ lowerOnes ^ middleOnes;
+		long onesCarry = (upperOnes & lowerOnes) | (middleOnes & (upperOnes ^ lowerOnes));
+
+		//Sum the four twos into bit 1, carrying into the fours and eights.
+		long twos = upperTwos ^ lowerTwos ^ middleTwos;
+		long twosCarry = (upperTwos & lowerTwos) | (middleTwos & (upperTwos ^ lowerTwos));
+		long bit1 = twos ^ onesCarry;
+		long foursCarry = twos & onesCarry;
+
+		return applyRule(middle, bit0, bit1, twosCarry ^ foursCarry, twosCarry & foursCarry);
+	}
+
+
+	/**
+	 * @return The next generation of the cells in <code>middle</code>, given the
+	 *         bits of their neighbour counts.
+	 */
+	private long applyRule(long middle, long bit0, long bit1, long bit2, long bit3)
+	{
+		long[] rule = this.rule;
+		long next = 0;
+		for (int i = 0; i < rule.length; i += RULE_STRIDE)
+		{
+			long matches = ~((bit0 ^ rule[i]) | (bit1 ^ rule[i+1]) | (bit2 ^ rule[i+2]) | (bit3 ^ rule[i+3]));
+			next |= matches & ((middle & rule[i+4]) | (~middle & rule[i+5]));
+		}
+
+		return next;
+	}
+
+
+	@Override
+	protected int getStateSize()
+	{
+		return super.getStateSize() + cells.length * 8;
+	}
+
+
+	@Override
+	protected void writeState(ByteBuffer buffer)
+	{
+		super.writeState(buffer);
+		buffer.asLongBuffer().put(cells);
+		buffer.position(buffer.position() + cells.length * 8);
+	}
+
+
+	@Override
+	protected Runnable readState(ByteBuffer buffer) throws IOException
+	{
+		final Runnable superState = super.readState(buffer);
+		final long[] newCells = new long[cells.length];
+		buffer.asLongBuffer().get(newCells);
+		buffer.position(buffer.position() + newCells.length * 8);
+
+		return new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				superState.run();
+				System.arraycopy(newCells, 0, cells, 0, cells.length);
+			}
+		};
+	}
+}
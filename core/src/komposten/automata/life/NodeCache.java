@@ -0,0 +1,358 @@
+package komposten.automata.life;
+
+import java.util.Arrays;
+
+/**
+ * The canonical quadtree nodes of a {@link HashLifeSimulation}. Every distinct
+ * node is stored once, so equal parts of the grid share a node and its memoized
+ * result. The nodes are kept in primitive arrays and referred to by index: 0 and
+ * 1 are the dead and living cells (level 0), and a node at level <code>n</code>
+ * covers <code>2^n x 2^n</code> cells with four children at level
+ * <code>n-1</code>.
+ * <p>
+ * The arrays start small and grow as needed, up to a fixed capacity. Once that is
+ * reached, {@link #join(int, int, int, int)} throws a {@link CacheFullException},
+ * after which {@link #collect(int)} should be called to evict the nodes that
+ * cannot be reached from the root. Node indices are only valid until the next
+ * collection.
+ */
+public class NodeCache
+{
+	public static final int DEFAULT_CAPACITY = 1 << 21;
+	private static final int INITIAL_SIZE = 1 << 16;
+
+	public static final int DEAD = 0;
+	public static final int ALIVE = 1;
+
+	public static final int NW = 0;
+	public static final int NE = 1;
+	public static final int SW = 2;
+	public static final int SE = 3;
+
+	private static final int NONE = -1;
+
+	private int capacity;
+	private int size;
+	/** The length of the arrays, which is also the number of buckets. */
+	private int allocated;
+
+	private byte[] levels;
+	private int[] children;
+	private long[] populations;
+	private int[] results;
+
+	/* Separate chaining. Node 0 is never in a chain, so 0 means "no node". */
+	private int[] buckets;
+	private int[] next;
+
+	private long nodeLookups;
+	private long nodeHits;
+	private long resultLookups;
+	private long resultHits;
+	private int collections;
+
+
+	/**
+	 * @param capacity The maximum number of nodes. Rounded up to a power of two.
+	 */
+	public NodeCache(int capacity)
+	{
+		this.capacity = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+		allocate(Math.min(INITIAL_SIZE, this.capacity));
+		clear();
+	}
+
+
+	private void allocate(int length)
+	{
+		allocated = length;
+		levels = (levels == null ? new byte[length] : Arrays.copyOf(levels, length));
+		children = (children == null ? new int[length * 4] : Arrays.copyOf(children, length * 4));
+		populations = (populations == null ? new long[length] : Arrays.copyOf(populations, length));
+		results = (results == null ? new int[length] : Arrays.copyOf(results, length));
+		Arrays.fill(results, size, length, NONE);
+		buckets = new int[length];
+		next = new int[length];
+
+		for (int node = 2; node < size; node++)
+			addToBucket(node);
+	}
+
+
+	private void addToBucket(int node)
+	{
+		int i = node * 4;
+		int bucket = hash(children[i], children[i+1], children[i+2], children[i+3]) & (allocated - 1);
+		next[node] = buckets[bucket];
+		buckets[bucket] = node;
+	}
+
+
+	/**
+	 * Removes all nodes except the two cells.
+	 */
+	public void clear()
+	{
+		Arrays.fill(buckets, 0);
+		Arrays.fill(results, NONE);
+		populations[DEAD] = 0;
+		populations[ALIVE] = 1;
+		size = 2;
+	}
+
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+
+	public int getSize()
+	{
+		return size;
+	}
+
+
+	/**
+	 * @return The number of nodes that fit in the arrays before they have to grow.
+	 */
+	public int getAllocatedSize()
+	{
+		return allocated;
+	}
+
+
+	/**
+	 * @return The size of the arrays, in bytes.
+	 */
+	public long getMemoryEstimate()
+	{
+		return allocated * (1L + 4 * 4 + 8 + 4 + 4 + 4);
+	}
+
+
+	public int getLevel(int node)
+	{
+		return levels[node];
+	}
+
+
+	public int getChild(int node, int quadrant)
+	{
+		return children[node * 4 + quadrant];
+	}
+
+
+	public long getPopulation(int node)
+	{
+		return populations[node];
+	}
+
+
+	/**
+	 * @return The canonical node with the specified children, which must all be on
+	 *         the same level.
+	 * @throws CacheFullException If the node does not exist and the cache is full.
+	 */
+	public int join(int nw, int ne, int sw, int se)
+	{
+		nodeLookups++;
+
+		int bucket = hash(nw, ne, sw, se) & (allocated - 1);
+		for (int node = buckets[bucket]; node != 0; node = next[node])
+		{
+			int i = node * 4;
+			if (children[i] == nw && children[i+1] == ne && children[i+2] == sw && children[i+3] == se)
+			{
+				nodeHits++;
+				return node;
+			}
+		}
+
+		if (size == allocated)
+		{
+			if (size == capacity)
+				throw CacheFullException.INSTANCE;
+			allocate(allocated * 2);
+		}
+
+		int node = size++;
+		set(node, nw, ne, sw, se, NONE);
+		addToBucket(node);
+		return node;
+	}
+
+
+	private void set(int node, int nw, int ne, int sw, int se, int result)
+	{
+		int i = node * 4;
+		children[i] = nw;
+		children[i+1] = ne;
+		children[i+2] = sw;
+		children[i+3] = se;
+		levels[node] = (byte) (levels[nw] + 1);
+		populations[node] = populations[nw] + populations[ne] + populations[sw] + populations[se];
+		results[node] = result;
+	}
+
+
+	private static int hash(int nw, int ne, int sw, int se)
+	{
+		int hash = nw;
+		hash = hash * 0x9E3779B1 + ne;
+		hash = hash * 0x9E3779B1 + sw;
+		hash = hash * 0x9E3779B1 + se;
+		return hash ^ (hash >>> 15);
+	}
+
+
+	/**
+	 * @return The memoized result of the node, or <code>-1</code> if it has not
+	 *         been computed since the results were last cleared.
+	 */
+	public int getResult(int node)
+	{
+		resultLookups++;
+		int result = results[node];
+		if (result != NONE)
+			resultHits++;
+		return result;
+	}
+
+
+	public void setResult(int node, int result)
+	{
+		results[node] = result;
+	}
+
+
+	/**
+	 * Forgets the results of all nodes above the specified level.
+	 */
+	public void clearResults(int aboveLevel)
+	{
+		for (int node = 2; node < size; node++)
+		{
+			if (levels[node] > aboveLevel)
+				results[node] = NONE;
+		}
+	}
+
+
+	/**
+	 * Evicts all nodes that cannot be reached from <code>root</code>, and the
+	 * results that point to evicted nodes. The remaining nodes are moved to the
+	 * start of the arrays, so all node indices except the two cells change.
+	 *
+	 * @return The new index of <code>root</code>.
+	 */
+	public int collect(int root)
+	{
+		int[] newIndices = new int[size];
+		Arrays.fill(newIndices, NONE);
+		newIndices[DEAD] = DEAD;
+		newIndices[ALIVE] = ALIVE;
+		mark(root, newIndices);
+
+		//A node is always created after its children, so moving the nodes in order keeps the children ahead of their parents.
+		int newSize = 2;
+		for (int node = 2; node < size; node++)
+		{
+			if (newIndices[node] != NONE)
+				newIndices[node] = newSize++;
+		}
+
+		Arrays.fill(buckets, 0);
+		for (int node = 2; node < size; node++)
+		{
+			int newNode = newIndices[node];
+			if (newNode == NONE)
+				continue;
+
+			int i = node * 4;
+			int result = (results[node] != NONE ? newIndices[results[node]] : NONE);
+			set(newNode, newIndices[children[i]], newIndices[children[i+1]], newIndices[children[i+2]],
+					newIndices[children[i+3]], result);
+			addToBucket(newNode);
+		}
+
+		Arrays.fill(results, newSize, size, NONE);
+		size = newSize;
+		collections++;
+
+		return newIndices[root];
+	}
+
+
+	private void mark(int node, int[] newIndices)
+	{
+		if (newIndices[node] != NONE)
+			return;
+
+		newIndices[node] = 0;
+		int i = node * 4;
+		for (int quadrant = 0; quadrant < 4; quadrant++)
+			mark(children[i + quadrant], newIndices);
+	}
+
+
+	/**
+	 * @return The number of calls to {@link #join(int, int, int, int)}.
+	 */
+	public long getNodeLookups()
+	{
+		return nodeLookups;
+	}
+
+
+	/**
+	 * @return The number of calls to {@link #join(int, int, int, int)} that found
+	 *         an existing node.
+	 */
+	public long getNodeHits()
+	{
+		return nodeHits;
+	}
+
+
+	public long getResultLookups()
+	{
+		return resultLookups;
+	}
+
+
+	/**
+	 * @return The number of calls to {@link #getResult(int)} that found a memoized
+	 *         result.
+	 */
+	public long getResultHits()
+	{
+		return resultHits;
+	}
+
+
+	/**
+	 * @return The number of times {@link #collect(int)} has been called.
+	 */
+	public int getCollectionCount()
+	{
+		return collections;
+	}
+
+
+	/**
+	 * Thrown by {@link NodeCache#join(int, int, int, int)} when the cache is full.
+	 * It is thrown often enough that a single instance without a stack trace is
+	 * used.
+	 */
+	public static class CacheFullException extends RuntimeException
+	{
+		private static final CacheFullException INSTANCE = new CacheFullException();
+
+
+		private CacheFullException()
+		{
+			super("The node cache is full!", null, false, false);
+		}
+	}
+}
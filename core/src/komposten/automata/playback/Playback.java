@@ -0,0 +1,97 @@
+package komposten.automata.playback;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+
+import komposten.automata.GridAutomaton;
+import komposten.automata.backend.Recording;
+
+/**
+ * Shows a {@link Recording}. The recorded states are uploaded as they are and
+ * coloured by the state shader of the automaton that was recorded, so playback
+ * always uses state rendering.
+ */
+public class Playback extends GridAutomaton
+{
+	private PlaybackSimulation simulation;
+
+
+	/**
+	 * @param width The width of the screen.
+	 * @param height The height of the screen.
+	 */
+	public Playback(Recording recording, int width, int height, OrthographicCamera orthographicCamera)
+	{
+		super("Playback", recording.getColumnCount(), recording.getRowCount(), width, height,
+				getCellSize(recording, width, height), Renderer.Pixmap, orthographicCamera);
+		simulation = new PlaybackSimulation(recording);
+	}
+
+
+	private static int getCellSize(Recording recording, int width, int height)
+	{
+		return Math.max(1, Math.min(width / recording.getColumnCount(), height / recording.getRowCount()));
+	}
+
+
+	@Override
+	public PlaybackSimulation getSimulation()
+	{
+		return simulation;
+	}
+
+
+	/**
+	 * Jumps to the last recorded frame at or before <code>tick</code>.
+	 */
+	public void seek(long tick)
+	{
+		simulation.seek(tick);
+	}
+
+
+	@Override
+	public boolean isStateRendering()
+	{
+		return true;
+	}
+
+
+	/**
+	 * Not used, since the recorded states are always drawn by the state shader.
+	 */
+	@Override
+	protected Color getCellColor(int index, Color color)
+	{
+		return color.set(Color.BLACK);
+	}
+
+
+	@Override
+	public String getStateShader()
+	{
+		return simulation.getRecording().getStateShader();
+	}
+
+
+	@Override
+	public int getCellState(int index)
+	{
+		return simulation.getState(index);
+	}
+
+
+	@Override
+	public void renderText(BitmapFont font, SpriteBatch batch)
+	{
+		Recording recording = simulation.getRecording();
+		long lastTick = recording.getTick(recording.getFrameCount() - 1);
+		String[] populationNames = simulation.getPopulationNames();
+
+		font.draw(batch, recording.getName() + ": tick " + simulation.getTicks() + " / " + lastTick, 10, 20);
+		for (int i = 0; i < populationNames.length; i++)
+			font.draw(batch, populationNames[i] + ": " + simulation.getPopulation(i), 10, 40 + i * 20);
+	}
+}
@@ -0,0 +1,183 @@
+package komposten.automata.playback;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import komposten.automata.backend.Recording;
+import komposten.automata.backend.Simulation;
+
+/**
+ * Plays back a {@link Recording}. Each tick applies the next frame of the
+ * recording instead of running any rules, and the cells hold the packed states
+ * that were recorded.
+ */
+public class PlaybackSimulation extends Simulation
+{
+	private Recording recording;
+	private int[] states;
+	private int[] framePopulations;
+	private int frame;
+	private boolean failed;
+
+
+	public PlaybackSimulation(Recording recording)
+	{
+		super("Playback", recording.getColumnCount(), recording.getRowCount(), recording.getPopulationNames());
+		this.recording = recording;
+		states = new int[getCellCount()];
+		framePopulations = new int[populations.length];
+		frame = -1;
+
+		createStartingGrid();
+	}
+
+
+	@Override
+	protected void createStartingGrid()
+	{
+		seekToFrame(0);
+	}
+
+
+	public Recording getRecording()
+	{
+		return recording;
+	}
+
+
+	/**
+	 * @return The packed state of the cell, as recorded.
+	 */
+	public int getState(int index)
+	{
+		return states[index];
+	}
+
+
+	/**
+	 * @return The tick of the current frame in the recorded simulation.
+	 */
+	@Override
+	public long getTicks()
+	{
+		return recording.getTick(frame);
+	}
+
+
+	public int getFrame()
+	{
+		return frame;
+	}
+
+
+	public boolean isAtEnd()
+	{
+		return frame == recording.getFrameCount() - 1 || failed;
+	}
+
+
+	@Override
+	protected void step()
+	{
+		if (!isAtEnd())
+			readFrame(frame + 1);
+
+		System.arraycopy(framePopulations, 0, populations, 0, populations.length);
+	}
+
+
+	/**
+	 * Moves to the last frame at or before <code>tick</code>. Frames are read from
+	 * the keyframe before it, unless the current frame is already between that
+	 * keyframe and the target.
+	 */
+	public void seek(long tick)
+	{
+		seekToFrame(recording.getFrame(tick));
+	}
+
+
+	private void seekToFrame(int target)
+	{
+		int keyframe = recording.getKeyframe(target);
+		int start = (frame >= keyframe && frame < target ? frame + 1 : keyframe);
+
+		for (int i = start; i <= target && !failed; i++)
+			readFrame(i);
+
+		System.arraycopy(framePopulations, 0, populations, 0, populations.length);
+	}
+
+
+	private void readFrame(int frame)
+	{
+		try
+		{
+			recording.readFrame(frame, states, getChangedCells(), framePopulations);
+			this.frame = frame;
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not read frame " + frame + " of the recording: " + e.getMessage());
+			failed = true;
+		}
+	}
+
+
+	@Override
+	protected int getStateSize()
+	{
+		return super.getStateSize() + 4 + states.length * 4;
+	}
+
+
+	@Override
+	protected void writeState(ByteBuffer buffer)
+	{
+		super.writeState(buffer);
+		buffer.putInt(frame);
+		buffer.asIntBuffer().put(states);
+		buffer.position(buffer.position() + states.length * 4);
+	}
+
+
+	@Override
+	protected Runnable readState(ByteBuffer buffer) throws IOException
+	{
+		final Runnable superState = super.readState(buffer);
+
+		final int newFrame = buffer.getInt();
+		if (newFrame < 0 || newFrame >= recording.getFrameCount())
+			throw new IOException("The checkpoint is for a different recording!");
+
+		final int[] newStates = new int[states.length];
+		buffer.asIntBuffer().get(newStates);
+		buffer.position(buffer.position() + newStates.length * 4);
+
+		return new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				superState.run();
+				frame = newFrame;
+				System.arraycopy(newStates, 0, states, 0, states.length);
+				System.arraycopy(populations, 0, framePopulations, 0, populations.length);
+			}
+		};
+	}
+
+
+	@Override
+	public void dispose()
+	{
+		try
+		{
+			recording.close();
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not close the recording: " + e.getMessage());
+		}
+	}
+}
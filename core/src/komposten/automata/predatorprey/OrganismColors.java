@@ -0,0 +1,60 @@
+package komposten.automata.predatorprey;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+
+import komposten.automata.backend.ShaderFactory;
+
+class OrganismColors
+{
+	/**
+	 * Sets the uniforms of {@link ShaderFactory#PREDATORPREY_STATE} that do not
+	 * change between frames.
+	 */
+	public static void initialiseStateShader()
+	{
+		ShaderProgram shader = ShaderFactory.getShader(ShaderFactory.PREDATORPREY_STATE);
+		shader.begin();
+		shader.setUniformf("u_maxHealth", PredatorPreySimulation.MAX_HEALTH);
+		shader.end();
+	}
+	
+	
+	public static Color getColor(byte type)
+	{
+		switch (type)
+		{
+			case PredatorPreySimulation.TYPE_PREDATOR :
+				return Color.RED;
+			case PredatorPreySimulation.TYPE_PREY :
+				return Color.GREEN;
+			case PredatorPreySimulation.TYPE_NOTHING :
+			default :
+				return Color.BLACK;
+		}
+	}
+
+
+	public static Color getColor(PredatorPreySimulation simulation, int index, Color out)
+	{
+		float factor = (simulation.getHealth(index) / (float)PredatorPreySimulation.MAX_HEALTH) * 0.75f + 0.25f;
+		return out.set(getColor(simulation.getType(index))).mul(factor, factor, factor, 1);
+	}
+	
+	
+	/**
+	 * Packs the state of a cell for {@link komposten.automata.backend.ShaderFactory#PREDATORPREY_STATE}:
+	 * the type in the red channel and the health (saturated at 255) in the green channel.
+	 * Empty cells always have a health of 0, since their health is not reset when they
+	 * are emptied.
+	 */
+	public static int getState(PredatorPreySimulation simulation, int index)
+	{
+		byte type = simulation.getType(index);
+		if (type == PredatorPreySimulation.TYPE_NOTHING)
+			return 0xFF;
+		
+		int health = Math.max(0, Math.min(simulation.getHealth(index), 255));
+		return (type << 24) | (health << 16) | 0xFF;
+	}
+}
@@ -0,0 +1,414 @@
+package komposten.automata.predatorprey;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import komposten.automata.backend.AtomicBitSet;
+import komposten.automata.backend.ChunkGrid;
+import komposten.automata.backend.RuleSimulation;
+import komposten.automata.backend.TileScheduler.Worker;
+
+/**
+ * The predator and prey rules, stored as one primitive array per cell property
+ * rather than as one object per cell. {@link Organism} can be used to view a
+ * single cell.
+ * <p>
+ * The grid is split into chunks by a {@link ChunkGrid}, so empty regions are not
+ * allocated and are skipped during a tick. Within a chunk the occupied cells are
+ * tracked in a bit set, so that a tick only visits cells that contain an organism.
+ */
+public class PredatorPreySimulation extends RuleSimulation
+{
+	public static final int PREDATORS = 0;
+	public static final int PREY = 1;
+
+	public static final byte TYPE_NOTHING = 0;
+	public static final byte TYPE_PREDATOR = 1;
+	public static final byte TYPE_PREY = 2;
+
+	public static final int MAX_HEALTH = 100;
+	private static final int START_HEALTH = 10;
+	public static final float DEFAULT_DENSITY = 0.1f;
+
+	private static class OrganismChunk extends ChunkGrid.Chunk
+	{
+		private final byte[] types = new byte[ChunkGrid.CELLS_PER_CHUNK];
+		private final short[] health = new short[ChunkGrid.CELLS_PER_CHUNK];
+		private final AtomicBitSet occupied = new AtomicBitSet(ChunkGrid.CELLS_PER_CHUNK);
+
+
+		@Override
+		protected boolean isEmpty()
+		{
+			return occupied.nextSetBit(0) < 0;
+		}
+	}
+
+
+	private float density;
+	private ChunkGrid<OrganismChunk> grid;
+
+
+	public PredatorPreySimulation(int columns, int rows)
+	{
+		this(columns, rows, DEFAULT_DENSITY);
+	}
+
+
+	/**
+	 * @param density The fraction of the cells that should contain an organism in the
+	 *          starting grid. The organisms are split evenly between predators and
+	 *          prey.
+	 */
+	public PredatorPreySimulation(int columns, int rows, float density)
+	{
+		this(columns, rows, density, createSeed());
+	}
+
+
+	public PredatorPreySimulation(int columns, int rows, float density, long seed)
+	{
+		super("PredatorPrey", columns, rows, 1, seed, "Predators", "Prey");
+
+		this.density = density;
+		grid = createGrid();
+
+		createStartingGrid();
+	}
+
+
+	private ChunkGrid<OrganismChunk> createGrid()
+	{
+		return new ChunkGrid<OrganismChunk>(getColumnCount(), getRowCount())
+		{
+			@Override
+			protected OrganismChunk createChunk()
+			{
+				return new OrganismChunk();
+			}
+		};
+	}
+
+
+	@Override
+	protected void createStartingGrid()
+	{
+		for (int r = 0; r < getRowCount(); r++)
+		{
+			for (int c = 0; c < getColumnCount(); c++)
+			{
+				byte type = getRandomType();
+
+				if (type != TYPE_NOTHING)
+				{
+					OrganismChunk chunk = grid.getOrCreate(grid.getChunkIndex(r, c));
+					int local = grid.getLocalIndex(r, c);
+					setType(chunk, local, type);
+					chunk.health[local] = START_HEALTH;
+				}
+
+				markChanged(getIndex(r, c));
+			}
+		}
+	}
+
+
+	private byte getRandomType()
+	{
+		int value = random.nextInt(1000);
+		int occupied = (int) (density * 1000);
+
+		if (value < occupied / 2)
+			return TYPE_PREDATOR;
+		else if (value < occupied)
+			return TYPE_PREY;
+		else
+			return TYPE_NOTHING;
+	}
+
+
+	public byte getType(int index)
+	{
+		int row = getRow(index);
+		int column = getColumn(index);
+		OrganismChunk chunk = grid.get(grid.getChunkIndex(row, column));
+		return (chunk == null ? TYPE_NOTHING : chunk.types[grid.getLocalIndex(row, column)]);
+	}
+
+
+	public int getHealth(int index)
+	{
+		int row = getRow(index);
+		int column = getColumn(index);
+		OrganismChunk chunk = grid.get(grid.getChunkIndex(row, column));
+		return (chunk == null ? 0 : chunk.health[grid.getLocalIndex(row, column)]);
+	}
+
+
+	public Organism getOrganism(int index)
+	{
+		return new Organism(this, index);
+	}
+
+
+	public ChunkGrid<?> getChunkGrid()
+	{
+		return grid;
+	}
+
+
+	@Override
+	protected void step()
+	{
+		super.step();
+		grid.endTick();
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Only the allocated chunks are stored, as their index followed by their types
+	 * and health.
+	 */
+	@Override
+	protected int getStateSize()
+	{
+		int chunkSize = 4 + ChunkGrid.CELLS_PER_CHUNK * (1 + 2);
+		return super.getStateSize() + 4 + getAllocatedChunks() * chunkSize;
+	}
+
+
+	private int getAllocatedChunks()
+	{
+		int count = 0;
+		for (int i = 0; i < grid.getChunkCount(); i++)
+		{
+			if (grid.get(i) != null)
+				count++;
+		}
+		return count;
+	}
+
+
+	@Override
+	protected void writeState(ByteBuffer buffer)
+	{
+		super.writeState(buffer);
+
+		buffer.putInt(getAllocatedChunks());
+		for (int i = 0; i < grid.getChunkCount(); i++)
+		{
+			OrganismChunk chunk = grid.get(i);
+			if (chunk == null)
+				continue;
+
+			buffer.putInt(i);
+			buffer.put(chunk.types);
+			buffer.asShortBuffer().put(chunk.health);
+			buffer.position(buffer.position() + chunk.health.length * 2);
+		}
+	}
+
+
+	@Override
+	protected Runnable readState(ByteBuffer buffer) throws IOException
+	{
+		final Runnable superState = super.readState(buffer);
+
+		final ChunkGrid<OrganismChunk> newGrid = createGrid();
+		int chunks = buffer.getInt();
+		if (chunks < 0 || chunks > newGrid.getChunkCount())
+			throw new IOException("Invalid chunk count: " + chunks + "!");
+
+		for (int i = 0; i < chunks; i++)
+		{
+			int index = buffer.getInt();
+			if (index < 0 || index >= newGrid.getChunkCount())
+				throw new IOException("Invalid chunk index: " + index + "!");
+
+			OrganismChunk chunk = newGrid.getOrCreate(index);
+			buffer.get(chunk.types);
+			buffer.asShortBuffer().get(chunk.health);
+			buffer.position(buffer.position() + chunk.health.length * 2);
+
+			for (int local = 0; local < chunk.types.length; local++)
+				chunk.occupied.set(local, chunk.types[local] != TYPE_NOTHING);
+		}
+
+		return new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				superState.run();
+				grid = newGrid;
+			}
+		};
+	}
+
+
+	@Override
+	public int nextOccupied(int row, int column, int endColumn)
+	{
+		int localRowStart = (row & ChunkGrid.CHUNK_MASK) << ChunkGrid.CHUNK_SHIFT;
+
+		while (column < endColumn)
+		{
+			int chunkX = column & ~ChunkGrid.CHUNK_MASK;
+			int chunkEnd = Math.min(endColumn, chunkX + ChunkGrid.CHUNK_SIZE);
+			OrganismChunk chunk = grid.get(grid.getChunkIndex(row, column));
+
+			if (chunk != null && chunk.isAwake())
+			{
+				int local = chunk.occupied.nextSetBit(localRowStart + column - chunkX, localRowStart + chunkEnd - chunkX);
+				if (local >= 0)
+				{
+					chunk.markActive();
+					return chunkX + (local & ChunkGrid.CHUNK_MASK);
+				}
+			}
+
+			column = chunkEnd;
+		}
+
+		return -1;
+	}
+
+
+	@Override
+	public void updateCell(Worker worker, int index, int row, int column, int neighbour, int neighbourRow, int neighbourColumn)
+	{
+		OrganismChunk chunk = grid.get(grid.getChunkIndex(row, column));
+		int local = grid.getLocalIndex(row, column);
+		int neighbourChunk = grid.getChunkIndex(neighbourRow, neighbourColumn);
+		int neighbourLocal = grid.getLocalIndex(neighbourRow, neighbourColumn);
+
+		switch (chunk.types[local])
+		{
+			case TYPE_PREDATOR :
+				worker.populations[PREDATORS]++;
+				updatePredator(worker, chunk, local, index, neighbourChunk, neighbourLocal, neighbour);
+				break;
+			case TYPE_PREY :
+				worker.populations[PREY]++;
+				updatePrey(worker, chunk, local, index, neighbourChunk, neighbourLocal, neighbour);
+				break;
+			case TYPE_NOTHING :
+				break;
+		}
+	}
+
+
+	private byte getType(OrganismChunk chunk, int local)
+	{
+		return (chunk == null ? TYPE_NOTHING : chunk.types[local]);
+	}
+
+
+	private void updatePredator(Worker worker, OrganismChunk chunk, int local, int index, int neighbourChunk, int neighbourLocal, int neighbour)
+	{
+		setHealth(worker, chunk, local, index, chunk.health[local] - 1);
+
+		OrganismChunk other = grid.get(neighbourChunk);
+		switch (getType(other, neighbourLocal))
+		{
+			case TYPE_PREDATOR :
+				break;
+			case TYPE_PREY :
+				setType(other, neighbourLocal, chunk.types[local]);
+				worker.markChanged(neighbour);
+				setHealth(worker, chunk, local, index, chunk.health[local] + other.health[neighbourLocal]);
+				break;
+			case TYPE_NOTHING :
+				moveTo(worker, chunk, local, index, neighbourChunk, neighbourLocal, neighbour);
+				break;
+		}
+	}
+
+
+	private void updatePrey(Worker worker, OrganismChunk chunk, int local, int index, int neighbourChunk, int neighbourLocal, int neighbour)
+	{
+		setHealth(worker, chunk, local, index, chunk.health[local] + 1);
+
+		switch (getType(grid.get(neighbourChunk), neighbourLocal))
+		{
+			case TYPE_PREDATOR :
+			case TYPE_PREY :
+				break;
+			case TYPE_NOTHING :
+				if (chunk.health[local] > MAX_HEALTH)
+				{
+					reproduceTo(worker, chunk, local, index, neighbourChunk, neighbourLocal, neighbour);
+				}
+				else
+				{
+					moveTo(worker, chunk, local, index, neighbourChunk, neighbourLocal, neighbour);
+				}
+				break;
+		}
+	}
+
+
+	private void setHealth(Worker worker, OrganismChunk chunk, int local, int index, int value)
+	{
+		if (value < 0)
+			setType(chunk, local, TYPE_NOTHING);
+		else if (value > Short.MAX_VALUE)
+			value = Short.MAX_VALUE;
+
+		chunk.health[local] = (short) value;
+		worker.markChanged(index);
+	}
+
+
+	private void setType(OrganismChunk chunk, int local, byte type)
+	{
+		chunk.types[local] = type;
+		chunk.occupied.set(local, type != TYPE_NOTHING);
+		chunk.markActive();
+	}
+
+
+	private void moveTo(Worker worker, OrganismChunk from, int fromLocal, int fromIndex, int toChunk, int toLocal, int toIndex)
+	{
+		byte type = from.types[fromLocal];
+
+		//Moving nothing into an unallocated chunk does not change anything.
+		if (type != TYPE_NOTHING || grid.get(toChunk) != null)
+		{
+			OrganismChunk to = grid.getOrCreate(toChunk);
+			setType(to, toLocal, type);
+			to.health[toLocal] = from.health[fromLocal];
+		}
+
+		setType(from, fromLocal, TYPE_NOTHING);
+
+		worker.markChanged(toIndex);
+		worker.markChanged(fromIndex);
+	}
+
+
+	private void reproduceTo(Worker worker, OrganismChunk parent, int parentLocal, int parentIndex, int childChunk, int childLocal, int childIndex)
+	{
+		OrganismChunk child = grid.getOrCreate(childChunk);
+		setType(child, childLocal, TYPE_PREY);
+		child.health[childLocal] = START_HEALTH;
+		parent.health[parentLocal] = START_HEALTH;
+
+		worker.markChanged(childIndex);
+		worker.markChanged(parentIndex);
+	}
+
+
+	public int getPredatorCount()
+	{
+		return populations[PREDATORS];
+	}
+
+
+	public int getPreyCount()
+	{
+		return populations[PREY];
+	}
+}
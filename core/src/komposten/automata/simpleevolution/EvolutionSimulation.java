@@ -0,0 +1,330 @@
+package komposten.automata.simpleevolution;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import komposten.automata.backend.AtomicBitSet;
+import komposten.automata.backend.RuleSimulation;
+import komposten.automata.backend.TileScheduler.Worker;
+
+/**
+ * The SimpleEvolution rules, stored as one primitive array per cell property (a
+ * packed {@link Genome}, health and reproduction timer) and a bit set of the
+ * living cells, rather than as one object per cell. {@link EvolvingOrganism} can
+ * be used to view a single cell.
+ * <p>
+ * A tick only visits the living cells, using the bit set.
+ */
+public class EvolutionSimulation extends RuleSimulation
+{
+	public static final int LIVING = 0;
+	public static final int RED = 1;
+	public static final int GREEN = 2;
+	public static final int BLUE = 3;
+	public static final int OTHERS = 4;
+	public static final float DEFAULT_DENSITY = 0.1f;
+	private static final int MUTATION_STREAM = 1;
+
+	private static final long REPRODUCTION_THRESHOLD_BASE = 100;
+	private static final long REPRODUCTION_THRESHOLD_REDUCTION = 25;
+	private static final int BASE_HEALTH = 75;
+	private static final int MAX_ADDITIONAL_HEALTH = 75;
+	private static final int REPRODUCTION_DAMAGE_BASE = 75;
+	private static final int REPRODUCTION_DAMAGE_REDUCTION = 60;
+	private static final int HIT_DAMAGE_BASE = 100;
+	private static final int HIT_DAMAGE_REDUCTION = 80;
+
+	private float density;
+	private int[] genomes;
+	private short[] health;
+	private short[] reproductionTimers;
+	private AtomicBitSet living;
+
+
+	public EvolutionSimulation(int columns, int rows)
+	{
+		this(columns, rows, DEFAULT_DENSITY);
+	}
+
+
+	/**
+	 * @param density The fraction of the cells that should be alive in the starting
+	 *          grid.
+	 */
+	public EvolutionSimulation(int columns, int rows, float density)
+	{
+		this(columns, rows, density, createSeed());
+	}
+
+
+	public EvolutionSimulation(int columns, int rows, float density, long seed)
+	{
+		super("SimpleEvolution", columns, rows, 2, seed, "Alive", "Red", "Green", "Blue", "Others");
+
+		this.density = density;
+		genomes = new int[getCellCount()];
+		health = new short[getCellCount()];
+		reproductionTimers = new short[getCellCount()];
+		living = new AtomicBitSet(getCellCount());
+
+		createStartingGrid();
+	}
+
+
+	@Override
+	protected void createStartingGrid()
+	{
+		int threshold = (int) (density * 1000);
+
+		for (int i = 0; i < genomes.length; i++)
+		{
+			boolean alive = random.nextInt(1000) < threshold;
+
+			living.set(i, alive);
+			genomes[i] = (alive ? Genome.START : Genome.DEAD);
+			health[i] = 0;
+			reproductionTimers[i] = 0;
+			markChanged(i);
+		}
+	}
+
+
+	public boolean isAlive(int index)
+	{
+		return living.get(index);
+	}
+
+
+	/**
+	 * @return The cell's genome, packed as described in {@link Genome}.
+	 */
+	public int getGenome(int index)
+	{
+		return genomes[index];
+	}
+
+
+	public int getHealth(int index)
+	{
+		return health[index];
+	}
+
+
+	EvolvingOrganism getOrganism(int index)
+	{
+		return new EvolvingOrganism(this, index);
+	}
+
+
+	@Override
+	protected int getStateSize()
+	{
+		return super.getStateSize() + getCellCount() * (4 + 2 + 2) + living.getWordCount() * 8;
+	}
+
+
+	@Override
+	protected void writeState(ByteBuffer buffer)
+	{
+		super.writeState(buffer);
+
+		buffer.asIntBuffer().put(genomes);
+		buffer.position(buffer.position() + genomes.length * 4);
+		buffer.asShortBuffer().put(health);
+		buffer.position(buffer.position() + health.length * 2);
+		buffer.asShortBuffer().put(reproductionTimers);
+		buffer.position(buffer.position() + reproductionTimers.length * 2);
+
+		for (int i = 0; i < living.getWordCount(); i++)
+			buffer.putLong(living.getWord(i));
+	}
+
+
+	@Override
+	protected Runnable readState(ByteBuffer buffer) throws IOException
+	{
+		final Runnable superState = super.readState(buffer);
+
+		final int[] newGenomes = new int[genomes.length];
+		buffer.asIntBuffer().get(newGenomes);
+		buffer.position(buffer.position() + newGenomes.length * 4);
+		final short[] newHealth = new short[health.length];
+		buffer.asShortBuffer().get(newHealth);
+		buffer.position(buffer.position() + newHealth.length * 2);
+		final short[] newTimers = new short[reproductionTimers.length];
+		buffer.asShortBuffer().get(newTimers);
+		buffer.position(buffer.position() + newTimers.length * 2);
+
+		final long[] livingWords = new long[living.getWordCount()];
+		for (int i = 0; i < livingWords.length; i++)
+			livingWords[i] = buffer.getLong();
+
+		return new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				superState.run();
+				System.arraycopy(newGenomes, 0, genomes, 0, genomes.length);
+				System.arraycopy(newHealth, 0, health, 0, health.length);
+				System.arraycopy(newTimers, 0, reproductionTimers, 0, reproductionTimers.length);
+				for (int i = 0; i < livingWords.length; i++)
+					living.setWord(i, livingWords[i]);
+			}
+		};
+	}
+
+
+	@Override
+	public int nextOccupied(int row, int column, int endColumn)
+	{
+		int rowStart = row * getColumnCount();
+		int index = living.nextSetBit(rowStart + column, rowStart + endColumn);
+		return (index < 0 ? -1 : index - rowStart);
+	}
+
+
+	@Override
+	public void updateCell(Worker worker, int index, int row, int column, int neighbour, int neighbourRow, int neighbourColumn)
+	{
+		worker.populations[LIVING]++;
+		worker.populations[getDominantColour(genomes[index])]++;
+		updateOrganism(worker, index, row, column, neighbour, neighbourRow, neighbourColumn);
+	}
+
+
+	private int getDominantColour(int genome)
+	{
+		float red = Genome.getRed(genome);
+		float green = Genome.getGreen(genome);
+		float blue = Genome.getBlue(genome);
+
+		if (red > green && red > blue)
+			return RED;
+		else if (green > red && green > blue)
+			return GREEN;
+		else if (blue > red && blue > green)
+			return BLUE;
+		else
+			return OTHERS;
+	}
+
+
+	private void updateOrganism(Worker worker, int organism, int row, int column, int neighbour, int row2, int column2)
+	{
+		if (living.get(neighbour))
+		{
+			if (canReproduce(organism) && canReproduce(neighbour))
+			{
+				if (Genome.canReproduce(genomes[organism], genomes[neighbour]))
+				{
+					int index = findDeadAround(row, column);
+					if (index < 0)
+					{
+						index = findDeadAround(row2, column2);
+					}
+
+					if (index >= 0)
+					{
+						reproduceTo(worker, organism, index, neighbour, cellRandom.get(MUTATION_STREAM, organism));
+					}
+				}
+				else
+				{
+					damage(worker, organism);
+				}
+			}
+		}
+		else
+		{
+			moveTo(worker, organism, neighbour);
+		}
+
+		if (reproductionTimers[organism] < Short.MAX_VALUE)
+			reproductionTimers[organism]++;
+	}
+
+
+	private boolean canReproduce(int index)
+	{
+		float fitness = Genome.getFitnessValue(Genome.getGreen(genomes[index]));
+		return reproductionTimers[index] > REPRODUCTION_THRESHOLD_BASE - (fitness * REPRODUCTION_THRESHOLD_REDUCTION);
+	}
+
+
+	private void damage(Worker worker, int index)
+	{
+		int damage = HIT_DAMAGE_BASE - (int)(Genome.getFitnessValue(Genome.getRed(genomes[index])) * HIT_DAMAGE_REDUCTION);
+		changeHealth(worker, index, -damage);
+	}
+
+
+	private void changeHealth(Worker worker, int index, int change)
+	{
+		int value = Math.max(health[index] + change, Short.MIN_VALUE);
+		health[index] = (short) Math.min(value, Short.MAX_VALUE);
+
+		if (value <= 0)
+		{
+			kill(worker, index);
+		}
+	}
+
+
+	private void kill(Worker worker, int index)
+	{
+		if (!living.get(index))
+			return;
+
+		living.clear(index);
+		genomes[index] = Genome.DEAD;
+		worker.markChanged(index);
+	}
+
+
+	private void moveTo(Worker worker, int from, int to)
+	{
+		genomes[to] = genomes[from];
+		living.set(to);
+		worker.markChanged(to);
+		kill(worker, from);
+	}
+
+
+	private void reproduceTo(Worker worker, int parent, int child, int partner, long randomBits)
+	{
+		living.set(child);
+		genomes[child] = Genome.reproduce(genomes[parent], genomes[partner], randomBits);
+//		health[child] = (short) (BASE_HEALTH + MAX_ADDITIONAL_HEALTH * Genome.getFitnessValue(Genome.getBlue(genomes[child])));
+		health[child] = BASE_HEALTH;
+		worker.markChanged(child);
+
+		int damage = REPRODUCTION_DAMAGE_BASE - (int)(Genome.getFitnessValue(Genome.getBlue(genomes[parent])) * REPRODUCTION_DAMAGE_REDUCTION);
+		changeHealth(worker, parent, -damage);
+
+		reproductionTimers[child] = 0;
+		reproductionTimers[parent] = 0;
+		reproductionTimers[partner] = 0;
+	}
+
+
+	private int findDeadAround(int row, int column)
+	{
+		for (int r = row-1; r <= row+1; r++)
+		{
+			for (int c = column-1; c <= column+1; c++)
+			{
+				if (r < 0 || r >= getRowCount()) continue;
+				if (c < 0 || c >= getColumnCount()) continue;
+
+				int index = getIndex(r, c);
+				if (!living.get(index))
+				{
+					return index;
+				}
+			}
+		}
+
+		return -1;
+	}
+}
@@ -0,0 +1,176 @@
+package komposten.automata.simpleevolution;
+
+import komposten.automata.backend.CellRandom;
+import komposten.utilities.tools.MathOps;
+
+/**
+ * Packs an organism's genome into an <code>int</code>, with 10 bits per colour
+ * component. The genome is also used as the organism's colour: <br />
+ * - Red = damage resistance (when attacked) <br />
+ * - Green = reproductive effectiveness (how often can you reproduce?) <br />
+ * - Blue = damage resistance (from reproducing)
+ */
+class Genome
+{
+	static final float COLOUR_COMPONENT_LIMIT = 0.4f;
+	private static final float MAX_GENETIC_DISTANCE = 0.01f; //Max obtainable distance is 1.73
+
+	private static final int BITS = 10;
+	private static final int MASK = (1 << BITS) - 1;
+	private static final float SCALE = MASK;
+
+	/** The genome of dead cells. */
+	static final int DEAD = 0;
+	/** The genome of the organisms in the starting grid. */
+	static final int START = pack(0.7f, 0.7f, 0.7f);
+
+
+	private Genome()
+	{
+	}
+
+
+	static int pack(float red, float green, float blue)
+	{
+		return (quantize(red) << (2 * BITS)) | (quantize(green) << BITS) | quantize(blue);
+	}
+
+
+	private static int quantize(float component)
+	{
+		return Math.round(component * SCALE);
+	}
+
+
+	static float getRed(int genome)
+	{
+		return ((genome >>> (2 * BITS)) & MASK) / SCALE;
+	}
+
+
+	static float getGreen(int genome)
+	{
+		return ((genome >>> BITS) & MASK) / SCALE;
+	}
+
+
+	static float getBlue(int genome)
+	{
+		return (genome & MASK) / SCALE;
+	}
+
+
+	/**
+	 * @return The genome as <code>0xRRGGBB00</code>, with 8 bits per component.
+	 */
+	static int toRGB888(int genome)
+	{
+		int red = ((genome >>> (2 * BITS)) & MASK) >>> (BITS - 8);
+		int green = ((genome >>> BITS) & MASK) >>> (BITS - 8);
+		int blue = (genome & MASK) >>> (BITS - 8);
+		return (red << 24) | (green << 16) | (blue << 8);
+	}
+
+
+	static float getFitnessValue(float colourComponent)
+	{
+		return (colourComponent - COLOUR_COMPONENT_LIMIT) / (1 - COLOUR_COMPONENT_LIMIT);
+	}
+
+
+	static boolean canReproduce(int genome, int other)
+	{
+		float dR = getRed(genome) - getRed(other);
+		float dG = getGreen(genome) - getGreen(other);
+		float dB = getBlue(genome) - getBlue(other);
+		
+		return Math.sqrt(dR*dR+dG*dG+dB*dB) < MAX_GENETIC_DISTANCE;
+	}
+
+
+	/**
+	 * Creates a child genome by averaging the parents' genomes and mutating the
+	 * result. Does not allocate.
+	 * 
+	 * @param randomBits 64 random bits, used for the mutation.
+	 */
+	static int reproduce(int parent, int partner, long randomBits)
+	{
+		float red = (getRed(parent) + getRed(partner)) / 2;
+		float green = (getGreen(parent) + getGreen(partner)) / 2;
+		float blue = (getBlue(parent) + getBlue(partner)) / 2;
+		
+		float range = 0.1f;
+		float lossMultiplier = 2;
+		
+		float gain = CellRandom.toFloat(randomBits) * range / 2;
+		float loss = -CellRandom.toFloat(randomBits << 24) * range;
+		
+		//loss = -2 * (x + gain)  ==>  x = loss / -2 - gain
+		//loss + x = -2 * gain  ==>  x = -2 * gain - loss
+		
+		float x = 0;
+		if (gain < -loss / lossMultiplier)
+			x = loss / (-lossMultiplier) - gain;
+		else if (gain > -loss / lossMultiplier)
+			x = (-lossMultiplier) * gain - loss;
+		
+		//Add gain, loss and x to the colour components in a random order.
+		float dR, dG, dB;
+		switch (CellRandom.toInt(randomBits << 48, 6))
+		{
+			case 0 :
+				dR = gain; dG = loss; dB = x;
+				break;
+			case 1 :
+				dR = gain; dG = x; dB = loss;
+				break;
+			case 2 :
+				dR = loss; dG = gain; dB = x;
+				break;
+			case 3 :
+				dR = loss; dG = x; dB = gain;
+				break;
+			case 4 :
+				dR = x; dG = gain; dB = loss;
+				break;
+			default :
+				dR = x; dG = loss; dB = gain;
+				break;
+		}
+		
+		red = MathOps.clamp(COLOUR_COMPONENT_LIMIT, 1, red + dR);
+		green = MathOps.clamp(COLOUR_COMPONENT_LIMIT, 1, green + dG);
+		blue = MathOps.clamp(COLOUR_COMPONENT_LIMIT, 1, blue + dB);
+		return pack(red, green, blue);
+	}
+
+
+//	private void mutate(Color color)
+//	{
+//		float r = getRandomDeviation(color.r);
+//		float g = getRandomDeviation(color.g);
+//		float b = -(r+g);
+//		color.add(r, g, b, 1);
+//	}
+//
+//
+//	private float getRandomDeviation(float value)
+//	{
+//		float range = 0.1f;
+//		float interval = range / 2;
+//		float randomFloat = random.nextFloat() * range;
+//		if (value < COLOUR_COMPONENT_LIMIT + interval)
+//		{
+//			return (randomFloat - (value - COLOUR_COMPONENT_LIMIT));
+//		}
+//		else if (value > 1 - interval)
+//		{
+//			return (randomFloat - range + (1 - value));
+//		}
+//		else
+//		{
+//			return randomFloat - interval;
+//		}
+//	}
+}
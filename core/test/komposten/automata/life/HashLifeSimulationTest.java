@@ -0,0 +1,154 @@
+package komposten.automata.life;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class HashLifeSimulationTest
+{
+	private static final long SEED = 42;
+
+
+	@Test
+	public void matchesNaiveLife()
+	{
+		assertMatchesNaiveLife("B3/S23", 40, 30, 0.3f, 0, 30, 1 << 20);
+		assertMatchesNaiveLife("B3/S23", 40, 30, 0.3f, 3, 8, 1 << 20);
+		assertMatchesNaiveLife("B3/S23", 33, 17, 0.3f, 5, 3, 1 << 20);
+		assertMatchesNaiveLife("B36/S23", 40, 30, 0.35f, 2, 10, 1 << 20);
+		assertMatchesNaiveLife("B2/S", 20, 20, 0.1f, 1, 10, 1 << 20);
+	}
+
+
+	@Test
+	public void matchesNaiveLifeWhenTheCacheIsCollected()
+	{
+		assertMatchesNaiveLife("B3/S23", 40, 30, 0.3f, 0, 60, 1 << 12);
+		assertMatchesNaiveLife("B3/S23", 64, 64, 0.3f, 4, 6, 1 << 13);
+	}
+
+
+	/**
+	 * Runs the simulation and compares its window and total population with a naive
+	 * simulation of the starting window on a grid large enough that no cell can
+	 * reach its edge.
+	 */
+	private void assertMatchesNaiveLife(String rule, int columns, int rows, float density, int stepExponent, int ticks,
+			int capacity)
+	{
+		HashLifeSimulation simulation = new HashLifeSimulation(columns, rows, rule, density, SEED, capacity);
+		boolean[][] start = getWindow(simulation);
+
+		simulation.setStepExponent(stepExponent);
+		for (int i = 0; i < ticks; i++)
+			simulation.update();
+
+		long generations = simulation.getTicks();
+		int margin = (int) generations + 2;
+		boolean[][] expected = runNaive(start, new LifeRule(rule), generations, margin);
+
+		String message = rule + " " + columns + "x" + rows + " at 2^" + stepExponent;
+		long population = 0;
+		for (boolean[] row : expected)
+		{
+			for (boolean alive : row)
+				population += (alive ? 1 : 0);
+		}
+		assertEquals(message + ": population", population, simulation.getPopulationTotal());
+
+		for (int r = 0; r < rows; r++)
+		{
+			for (int c = 0; c < columns; c++)
+				assertEquals(message + ": cell (" + c + ", " + r + ")", expected[r + margin][c + margin],
+						simulation.isAlive(r * columns + c));
+		}
+	}
+
+
+	private boolean[][] getWindow(HashLifeSimulation simulation)
+	{
+		int columns = simulation.getColumnCount();
+		boolean[][] window = new boolean[simulation.getRowCount()][columns];
+		for (int r = 0; r < window.length; r++)
+		{
+			for (int c = 0; c < columns; c++)
+				window[r][c] = simulation.isAlive(r * columns + c);
+		}
+		return window;
+	}
+
+
+	private boolean[][] runNaive(boolean[][] start, LifeRule rule, long generations, int margin)
+	{
+		int height = start.length + 2 * margin;
+		int width = start[0].length + 2 * margin;
+		boolean[][] grid = new boolean[height][width];
+		for (int r = 0; r < start.length; r++)
+			System.arraycopy(start[r], 0, grid[r + margin], margin, start[r].length);
+
+		for (long generation = 0; generation < generations; generation++)
+		{
+			boolean[][] next = new boolean[height][width];
+			for (int y = 1; y < height - 1; y++)
+			{
+				for (int x = 1; x < width - 1; x++)
+				{
+					int neighbours = 0;
+					for (int dy = -1; dy <= 1; dy++)
+					{
+						for (int dx = -1; dx <= 1; dx++)
+						{
+							if ((dx != 0 || dy != 0) && grid[y + dy][x + dx])
+								neighbours++;
+						}
+					}
+					next[y][x] = rule.isAlive(grid[y][x], neighbours);
+				}
+			}
+			grid = next;
+		}
+
+		return grid;
+	}
+
+
+	/**
+	 * At the largest step the cells spread until the root would exceed the largest
+	 * level. The simulation then stops advancing, and can still be saved and
+	 * restored.
+	 */
+	@Test
+	public void stopsAtTheLargestLevel() throws IOException
+	{
+		HashLifeSimulation simulation = new HashLifeSimulation(64, 64, "B3/S23", 0.3f, 3, NodeCache.DEFAULT_CAPACITY);
+		simulation.setStepExponent(HashLifeSimulation.MAX_STEP_EXPONENT);
+
+		for (int i = 0; i < 200 && !simulation.isAtLimit(); i++)
+			simulation.update();
+		assertTrue(simulation.isAtLimit());
+
+		long generations = simulation.getTicks();
+		long population = simulation.getPopulationTotal();
+		for (int i = 0; i < 10; i++)
+			simulation.update();
+		assertEquals(generations, simulation.getTicks());
+		assertEquals(population, simulation.getPopulationTotal());
+
+		ByteBuffer state = ByteBuffer.allocate(simulation.getStateSize());
+		simulation.writeState(state);
+		state.flip();
+
+		HashLifeSimulation restored = new HashLifeSimulation(64, 64, "B3/S23", 0.3f, 1, NodeCache.DEFAULT_CAPACITY);
+		restored.readState(state).run();
+		assertFalse(state.hasRemaining());
+		assertEquals(generations, restored.getTicks());
+		assertEquals(population, restored.getPopulationTotal());
+		for (int i = 0; i < restored.getCellCount(); i++)
+			assertEquals(simulation.isAlive(i), restored.isAlive(i));
+	}
+}
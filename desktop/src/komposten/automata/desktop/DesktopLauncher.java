@@ -17,6 +17,9 @@ public class DesktopLauncher
 		config.vSyncEnabled = false;
 		config.title = "Cellular Automata";
 		config.useGL30 = true;
-		new LwjglApplication(new Application(), config);
+		int threads = (arg.length > 0 ? Integer.parseInt(arg[0]) : 0);
+		int columns = (arg.length > 1 ? Integer.parseInt(arg[1]) : 0);
+		int rows = (arg.length > 2 ? Integer.parseInt(arg[2]) : 0);
+		new LwjglApplication(new Application(threads, columns, rows), config);
 	}
 }
@@ -0,0 +1,129 @@
+package komposten.automata.desktop;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import komposten.automata.backend.ChunkGrid;
+import komposten.automata.backend.PopulationExporter;
+import komposten.automata.backend.PopulationExporter.Format;
+import komposten.automata.backend.Simulation;
+import komposten.automata.backend.TiledSimulation;
+import komposten.automata.life.HashLifeSimulation;
+import komposten.automata.life.LifeRule;
+import komposten.automata.life.LifeSimulation;
+import komposten.automata.life.NodeCache;
+import komposten.automata.predatorprey.PredatorPreySimulation;
+import komposten.automata.simpleevolution.EvolutionSimulation;
+
+/**
+ * Runs a simulation without creating a window or a GL context.
+ * <p>
+ * Usage: <code>HeadlessLauncher [automaton] [columns] [rows] [ticks] [threads] [seed] [populations file] [step exponent]</code>
+ * <p>
+ * Runs with the same seed give the same result, regardless of the number of
+ * threads. If a populations file is given, the populations of every tick are
+ * exported to it, as CSV if the file name ends with <code>.csv</code> and in the
+ * binary format of {@link PopulationExporter} otherwise.
+ * <p>
+ * HashLife runs on a single thread and advances <code>2^(step exponent)</code>
+ * generations per tick, so its ticks per second are generations per second.
+ */
+public class HeadlessLauncher
+{
+	private static final int REPORT_INTERVAL = 1000;
+
+
+	public static void main(String[] arg) throws IOException
+	{
+		String name = (arg.length > 0 ? arg[0] : "PredatorPrey");
+		int columns = (arg.length > 1 ? Integer.parseInt(arg[1]) : 1024);
+		int rows = (arg.length > 2 ? Integer.parseInt(arg[2]) : 768);
+		long ticks = (arg.length > 3 ? Long.parseLong(arg[3]) : 10000);
+		int threads = (arg.length > 4 ? Integer.parseInt(arg[4]) : Runtime.getRuntime().availableProcessors());
+		long seed = (arg.length > 5 ? Long.parseLong(arg[5]) : System.nanoTime());
+		String populationsFile = (arg.length > 6 && !arg[6].isEmpty() ? arg[6] : null);
+		int stepExponent = (arg.length > 7 ? Integer.parseInt(arg[7]) : HashLifeSimulation.DEFAULT_STEP_EXPONENT);
+
+		Simulation simulation = createSimulation(name, columns, rows, seed);
+		if (simulation instanceof TiledSimulation)
+			((TiledSimulation) simulation).setThreadCount(threads);
+		else
+			threads = 1;
+		if (simulation instanceof HashLifeSimulation)
+			((HashLifeSimulation) simulation).setStepExponent(stepExponent);
+		System.out.println("Running " + simulation.getName() + " [" + columns + ", " + rows + "] for " + ticks + " ticks on " + threads + " threads (seed " + seed + ")...");
+
+		PopulationExporter exporter = null;
+		if (populationsFile != null)
+		{
+			Format format = (populationsFile.endsWith(".csv") ? Format.CSV : Format.BINARY);
+			exporter = new PopulationExporter(simulation, Paths.get(populationsFile), format);
+		}
+
+		long start = System.nanoTime();
+		for (long tick = 1; tick <= ticks; tick++)
+		{
+			simulation.update();
+
+			if (tick % REPORT_INTERVAL == 0 || tick == ticks)
+			{
+				printStatus(simulation, System.nanoTime() - start);
+			}
+		}
+
+		if (exporter != null)
+		{
+			exporter.close();
+			System.out.println("Exported the populations to " + populationsFile + " (" + exporter.getSkippedEntries() + " ticks skipped).");
+		}
+
+		simulation.dispose();
+	}
+
+
+	private static Simulation createSimulation(String name, int columns, int rows, long seed)
+	{
+		if (name.equalsIgnoreCase("PredatorPrey") || name.equalsIgnoreCase("PixPredatorPrey"))
+			return new PredatorPreySimulation(columns, rows, PredatorPreySimulation.DEFAULT_DENSITY, seed);
+		else if (name.equalsIgnoreCase("SimpleEvolution"))
+			return new EvolutionSimulation(columns, rows, EvolutionSimulation.DEFAULT_DENSITY, seed);
+		else if (name.equalsIgnoreCase("GameOfLife"))
+			return new LifeSimulation(columns, rows, LifeSimulation.DEFAULT_DENSITY, seed);
+		else if (name.equalsIgnoreCase("HashLife"))
+			return new HashLifeSimulation(columns, rows, LifeRule.CONWAY, HashLifeSimulation.DEFAULT_DENSITY, seed,
+					NodeCache.DEFAULT_CAPACITY);
+		else
+			throw new IllegalArgumentException("Unknown automaton: " + name);
+	}
+
+
+	private static void printStatus(Simulation simulation, long elapsedNanos)
+	{
+		StringBuilder builder = new StringBuilder();
+		builder.append("Tick ").append(simulation.getTicks());
+		builder.append(String.format(" (%.1f ticks/s)", simulation.getTicks() / (elapsedNanos / 1E9d)));
+
+		String[] populations = simulation.getPopulationNames();
+		for (int i = 0; i < populations.length; i++)
+		{
+			builder.append("   ").append(populations[i]).append(": ").append(simulation.getPopulation(i));
+		}
+
+		if (simulation instanceof PredatorPreySimulation)
+		{
+			ChunkGrid<?> grid = ((PredatorPreySimulation) simulation).getChunkGrid();
+			builder.append("   Chunks (awake/allocated/total): ").append(grid.getAwakeChunkCount());
+			builder.append("/").append(grid.getAllocatedChunkCount()).append("/").append(grid.getChunkCount());
+		}
+		else if (simulation instanceof HashLifeSimulation)
+		{
+			NodeCache cache = ((HashLifeSimulation) simulation).getCache();
+			builder.append("   Nodes: ").append(cache.getSize()).append("/").append(cache.getCapacity());
+			builder.append(String.format(" (node hits %.1f%%, result hits %.1f%%, %d collections)",
+					100d * cache.getNodeHits() / cache.getNodeLookups(), 100d * cache.getResultHits() / cache.getResultLookups(),
+					cache.getCollectionCount()));
+		}
+
+		System.out.println(builder);
+	}
+}